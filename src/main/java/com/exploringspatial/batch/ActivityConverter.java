@@ -0,0 +1,378 @@
+package com.exploringspatial.batch;
+
+import com.exploringspatial.domain.FitActivity;
+import com.exploringspatial.service.GarminFitService;
+import com.exploringspatial.tcx.TcxActivityIterator;
+import com.exploringspatial.tcx.TcxStreamParser;
+import org.opengis.referencing.FactoryException;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The purpose of this class is to convert one catalog entry from the activity export
+ * into a GeoJSON file: find its .fit (or else .tcx) file in the import directory,
+ * decode it and write the feature to the output directory named by activity id.
+ *
+ * The work is split into read, decode, simplify and write steps around a
+ * {@link ConversionJob}, so a pipeline can run each step on its own threads;
+ * convert runs all four on the calling thread.
+ *
+ * With an {@link ImportManifest} set, entries whose input, catalog fields and settings
+ * match the manifest are skipped, and every file written is recorded in it. With an
+ * {@link ImportCheckpoint} set, every entry that is written, skipped or has no usable
+ * input is recorded in it as finished. With {@link FeatureCollections} or
+ * {@link FeatureSequenceFiles} set, every feature written is also appended to its
+ * collection or sequence; the manifest then never skips an entry, since they have to
+ * hold every activity.
+ *
+ * Safe to call from several threads at once; the GarminFitService and the
+ * TcxStreamParser are shared.
+ *
+ * @author Steve Mitchell
+ */
+public class ActivityConverter {
+    public static final String RUNNING = "RUNNING";
+    /**
+     * Returned by convert when there is no .fit or .tcx file or it holds no usable activity.
+     */
+    public static final int NO_INPUT = -1;
+    /**
+     * Returned by convert when the import manifest shows the output is up to date.
+     */
+    public static final int UNCHANGED = -2;
+    private final GarminFitService garminFitService;
+    private final File importDir;
+    private final File outputDir;
+    private ImportManifest importManifest;
+    private String settings;
+    private ImportCheckpoint importCheckpoint;
+    private FeatureCollections featureCollections;
+    private FeatureSequenceFiles featureSequenceFiles;
+    private final TcxStreamParser tcxParser = new TcxStreamParser();
+
+    public ActivityConverter(final GarminFitService garminFitService, final File importDir, final File outputDir) {
+        this.garminFitService = garminFitService;
+        this.importDir = importDir;
+        this.outputDir = outputDir;
+    }
+
+    public GarminFitService getGarminFitService() {
+        return garminFitService;
+    }
+
+    public File getImportDir() {
+        return importDir;
+    }
+
+    public File getOutputDir() {
+        return outputDir;
+    }
+
+    public ImportManifest getImportManifest() {
+        return importManifest;
+    }
+
+    /**
+     * The purpose of this method is to set the manifest and take the settings key of the
+     * GarminFitService, so configure the service first.
+     *
+     * @param importManifest - Manifest of a previous import to skip unchanged entries, or null to convert everything.
+     */
+    public void setImportManifest(final ImportManifest importManifest) {
+        this.importManifest = importManifest;
+        this.settings = settingsKey(garminFitService);
+    }
+
+    public ImportCheckpoint getImportCheckpoint() {
+        return importCheckpoint;
+    }
+
+    /**
+     * @param importCheckpoint - Checkpoint to record finished entries in, or null.
+     */
+    public void setImportCheckpoint(final ImportCheckpoint importCheckpoint) {
+        this.importCheckpoint = importCheckpoint;
+    }
+
+    public FeatureCollections getFeatureCollections() {
+        return featureCollections;
+    }
+
+    /**
+     * @param featureCollections - Collections to append every written feature to, or null.
+     *                           The caller closes them once the import is done.
+     */
+    public void setFeatureCollections(final FeatureCollections featureCollections) {
+        this.featureCollections = featureCollections;
+    }
+
+    public FeatureSequenceFiles getFeatureSequenceFiles() {
+        return featureSequenceFiles;
+    }
+
+    /**
+     * @param featureSequenceFiles - Text sequence files to append every written feature to, or null.
+     *                             The caller closes them once the import is done.
+     */
+    public void setFeatureSequenceFiles(final FeatureSequenceFiles featureSequenceFiles) {
+        this.featureSequenceFiles = featureSequenceFiles;
+    }
+
+    /**
+     * The purpose of this method is to convert a single catalog entry. The entry itself is
+     * not modified; the written feature takes the catalog's name, start time and totals
+     * and the decoded file's sport and track.
+     *
+     * @param entry - Activity from the catalog; only the activity id is required.
+     * @return the number of track points written, NO_INPUT if there was no usable input file
+     * or UNCHANGED if the manifest shows the output is up to date.
+     * @throws IOException when the input cannot be read or the output written.
+     * @throws FactoryException when the GeoJSON schema cannot be built.
+     */
+    public int convert(final FitActivity entry) throws IOException, FactoryException {
+        final ConversionJob job = read(entry);
+        if (job == null || (!job.isUnchanged() && !decode(job))) {
+            return NO_INPUT;
+        }
+        if (job.isUnchanged()) {
+            return UNCHANGED;
+        }
+        simplify(job);
+        return write(job);
+    }
+
+    /**
+     * The purpose of this method is to do the disk I/O for an entry: FIT files are mapped
+     * and loaded into memory, TCX files are read into a heap buffer. With a manifest set
+     * the input is not loaded when its size and modified time match, and it is hashed
+     * when they do not; either way an up to date entry comes back marked unchanged.
+     *
+     * @param entry - Activity from the catalog.
+     * @return a job holding the input, or null when there is no .fit or .tcx file.
+     * @throws IOException when the input cannot be read.
+     */
+    public ConversionJob read(final FitActivity entry) throws IOException {
+        final File activityFile = findInputFile(entry);
+        if (activityFile == null) {
+            finished(entry);
+            return null;
+        }
+        final ConversionJob job = new ConversionJob(entry);
+        job.setInputFile(activityFile);
+        job.setInputSize(activityFile.length());
+        job.setInputLastModified(activityFile.lastModified());
+        job.setTcx(activityFile.getName().endsWith(".tcx"));
+        final ImportManifest.Record record = findCurrentRecord(job);
+        if (record != null && record.matchesFile(activityFile.getName(), job.getInputSize(), job.getInputLastModified())) {
+            job.setUnchanged(true);
+            finished(entry);
+            return job;
+        }
+        if (job.isTcx()) {
+            job.setInput(ByteBuffer.wrap(Files.readAllBytes(activityFile.toPath())));
+        } else {
+            final FileChannel channel = FileChannel.open(activityFile.toPath(), StandardOpenOption.READ);
+            try {
+                job.setInput(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).load());
+            } finally {
+                channel.close();
+            }
+        }
+        if (importManifest != null) {
+            job.setHash(ImportManifest.hash(job.getInput()));
+            if (record != null && record.getHash().equals(job.getHash())) {
+                // Touched but not modified; remember the new time so the next run only stats it.
+                importManifest.put(createRecord(job));
+                job.setInput(null);
+                job.setUnchanged(true);
+                finished(entry);
+            }
+        }
+        return job;
+    }
+
+    /**
+     * @return the .fit file of an entry, else its .tcx file, or null when there is neither.
+     */
+    public File findInputFile(final FitActivity entry) {
+        if (entry.getActivityId() == null) {
+            return null;
+        }
+        File activityFile = new File(importDir, ("" + entry.getActivityId()).concat(".fit"));
+        if (activityFile.exists()) {
+            return activityFile;
+        }
+        activityFile = new File(importDir, ("" + entry.getActivityId()).concat(".tcx"));
+        return activityFile.exists() ? activityFile : null;
+    }
+
+    /**
+     * @return the manifest record of a job if its catalog fields, settings and output
+     * file are still current, otherwise null.
+     */
+    private ImportManifest.Record findCurrentRecord(final ConversionJob job) {
+        if (importManifest == null || featureCollections != null || featureSequenceFiles != null) {
+            return null;
+        }
+        final FitActivity entry = job.getEntry();
+        final ImportManifest.Record record = importManifest.get(entry.getActivityId());
+        if (record == null
+                || !record.matchesSettings(catalogFingerprint(entry), settings)
+                || !new File(outputDir, entry.getActivityId().toString()).exists()) {
+            return null;
+        }
+        return record;
+    }
+
+    private ImportManifest.Record createRecord(final ConversionJob job) {
+        final FitActivity entry = job.getEntry();
+        return new ImportManifest.Record(entry.getActivityId(), job.getInputFile().getName(), job.getInputSize(),
+                job.getInputLastModified(), job.getHash(), catalogFingerprint(entry), settings);
+    }
+
+    /**
+     * @return the SHA-1 of the catalog fields copied into the feature.
+     */
+    private static String catalogFingerprint(final FitActivity entry) {
+        return ImportManifest.hash(entry.getName() + "\u0000" + entry.getDescription() + "\u0000" + entry.getStartTime()
+                + "\u0000" + entry.getTotalMeters() + "\u0000" + entry.getTotalSeconds());
+    }
+
+    /**
+     * The purpose of this method is to list every setting of the service that can change
+     * the GeoJSON written, so a manifest record is only current for the same settings.
+     *
+     * @param garminFitService - The configured service.
+     * @return e.g. "outputVersion=1;decodeEngine=NATIVE;tolerance=1.0E-4;...".
+     */
+    static String settingsKey(final GarminFitService garminFitService) {
+        return "outputVersion=" + GarminFitService.OUTPUT_VERSION
+                + ";decodeEngine=" + garminFitService.getDecodeEngine()
+                + ";streamingWindow=" + garminFitService.getStreamingWindow()
+                + ";prefilterRadius=" + garminFitService.getPrefilterRadius()
+                + ";simplifyEngine=" + garminFitService.getSimplifyEngine()
+                + ";tolerance=" + garminFitService.getTolerance()
+                + ";toleranceUnit=" + garminFitService.getToleranceUnit()
+                + ";vertexBudget=" + garminFitService.getVertexBudget()
+                + ";geoJsonEngine=" + garminFitService.getGeoJsonEngine()
+                + ";precision=" + garminFitService.getCoordinatePrecision()
+                + ";polyline=" + garminFitService.getPolylinePrecision();
+    }
+
+    /**
+     * The purpose of this method is to decode the input of a job into the activity to write.
+     * For TCX files holding several activities the last running activity is used; they
+     * are read one at a time, so at most two are in memory.
+     *
+     * @param job - A job returned by read.
+     * @return false when the input held no usable activity.
+     * @throws IOException when the TCX input cannot be parsed.
+     */
+    public boolean decode(final ConversionJob job) throws IOException {
+        final ByteBuffer input = job.getInput();
+        FitActivity parsedActivity = null;
+        if (job.isTcx()) {
+            final InputStream in = new ByteArrayInputStream(input.array(), input.arrayOffset() + input.position(), input.remaining());
+            try {
+                final TcxActivityIterator activities = tcxParser.iterateTcxFile(in);
+                try {
+                    while (activities.hasNext()) {
+                        final FitActivity next = activities.next();
+                        if (RUNNING.equals(next.getSport())) {
+                            parsedActivity = next;
+                        }
+                    }
+                } finally {
+                    activities.close();
+                }
+            } catch (XMLStreamException e) {
+                throw new IOException(e);
+            } catch (IllegalStateException e) {
+                throw new IOException(e);
+            } finally {
+                in.close();
+            }
+        } else {
+            parsedActivity = garminFitService.decodeFitFile(input);
+        }
+        job.setInput(null);
+        if (parsedActivity == null) {
+            finished(job.getEntry());
+            return false;
+        }
+        final FitActivity entry = job.getEntry();
+        final FitActivity fitActivity = new FitActivity();
+        fitActivity.setActivityId(entry.getActivityId());
+        fitActivity.setName(entry.getName());
+        fitActivity.setDescription(entry.getDescription());
+        fitActivity.setStartTime(entry.getStartTime());
+        fitActivity.setTotalMeters(entry.getTotalMeters());
+        fitActivity.setTotalSeconds(entry.getTotalSeconds());
+        fitActivity.setSport(parsedActivity.getSport());
+        fitActivity.setTrack(parsedActivity.getTrack());
+        job.setFitActivity(fitActivity);
+        return true;
+    }
+
+    /**
+     * The purpose of this method is to simplify the decoded track of a job.
+     *
+     * @param job - A job that has been decoded.
+     */
+    public void simplify(final ConversionJob job) {
+        job.setGeometry(garminFitService.simplifyLineString(job.getFitActivity().getTrack().toCoordinateSequence()));
+    }
+
+    /**
+     * The purpose of this method is to write the GeoJSON file of a simplified job,
+     * named by activity id in the output directory. The feature is written to a temporary
+     * file, forced to disk and renamed into place, so a crash never leaves a partial file
+     * behind, nor a file recorded as finished that is not on disk. It is then appended to
+     * its feature collection and text sequence, if they are set.
+     *
+     * @param job - A job that has been simplified.
+     * @return the number of points in the full resolution track.
+     * @throws IOException when the output cannot be written.
+     * @throws FactoryException when the GeoJSON schema cannot be built.
+     */
+    public int write(final ConversionJob job) throws IOException, FactoryException {
+        final FitActivity fitActivity = job.getFitActivity();
+        final File file = new File(outputDir, fitActivity.getActivityId().toString());
+        final File temp = new File(outputDir, fitActivity.getActivityId() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = DurableFiles.create(temp);
+            garminFitService.writeFeatureGeoJSON(fitActivity, job.getGeometry(), out);
+            out.close();
+            out = null;
+            DurableFiles.moveIntoPlace(temp, file);
+            if (featureCollections != null) {
+                featureCollections.add(fitActivity, job.getGeometry());
+            }
+            if (featureSequenceFiles != null) {
+                featureSequenceFiles.add(fitActivity, job.getGeometry());
+            }
+            if (importManifest != null) {
+                importManifest.put(createRecord(job));
+            }
+            finished(job.getEntry());
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+            Files.deleteIfExists(temp.toPath());
+        }
+        return fitActivity.getTrack().size();
+    }
+
+    private void finished(final FitActivity entry) throws IOException {
+        if (importCheckpoint != null) {
+            importCheckpoint.record(entry.getActivityId());
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.exploringspatial.batch;
+
+import com.exploringspatial.domain.FitActivity;
+import org.apache.log4j.Logger;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The purpose of this class is to convert catalog entries concurrently. Each entry is
+ * an independent task on the executor; a failure is logged and counted against that
+ * activity only, and the rest of the batch carries on.
+ *
+ * The fixed pool constructor suits most hosts. Any ExecutorService can be supplied
+ * instead, for example one running a thread per task on a JVM that has virtual threads.
+ *
+ * @author Steve Mitchell
+ */
+public class BatchConverter {
+    private static final int PROGRESS_INTERVAL = 1000;
+    private final Logger log = Logger.getLogger(BatchConverter.class);
+    private final ActivityConverter activityConverter;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+
+    /**
+     * @param activityConverter - Converts a single entry.
+     * @param parallelism       - Number of worker threads, e.g. Runtime.getRuntime().availableProcessors().
+     */
+    public BatchConverter(final ActivityConverter activityConverter, final int parallelism) {
+        this.activityConverter = activityConverter;
+        this.executor = Executors.newFixedThreadPool(parallelism, new WorkerThreadFactory());
+        this.ownsExecutor = true;
+    }
+
+    /**
+     * @param activityConverter - Converts a single entry.
+     * @param executor          - Runs the conversions; it is not shut down by this class.
+     */
+    public BatchConverter(final ActivityConverter activityConverter, final ExecutorService executor) {
+        this.activityConverter = activityConverter;
+        this.executor = executor;
+        this.ownsExecutor = false;
+    }
+
+    /**
+     * The purpose of this method is to convert every entry and wait for all of them to finish.
+     *
+     * @param entries - Catalog entries to convert.
+     * @return counts, failed activity ids and throughput for the batch.
+     * @throws InterruptedException if interrupted while waiting for the workers.
+     */
+    public BatchResult convert(final List<FitActivity> entries) throws InterruptedException {
+        final BatchResult result = new BatchResult(entries.size());
+        final CountDownLatch done = new CountDownLatch(entries.size());
+        for (final FitActivity entry : entries) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        convert(entry, result);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        done.await();
+        result.finish();
+        log.info(result);
+        return result;
+    }
+
+    /**
+     * The purpose of this method is to shut down the worker pool created by this class.
+     */
+    public void shutdown() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    private void convert(final FitActivity entry, final BatchResult result) {
+        try {
+            final int points = activityConverter.convert(entry);
+            if (points == ActivityConverter.UNCHANGED) {
+                result.addUnchanged();
+            } else if (points < 0) {
+                result.addMissing();
+            } else {
+                result.addConverted(points);
+            }
+        } catch (Exception e) {
+            log.error("Failed to convert activity " + entry.getActivityId(), e);
+            result.addFailed(entry.getActivityId());
+        }
+        if (result.getCompleted() % PROGRESS_INTERVAL == 0) {
+            log.info(result);
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "batch-converter-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.exploringspatial.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The BatchResult class collects the outcome of a batch conversion. It is updated
+ * concurrently by the workers and read once the batch is finished.
+ *
+ * @author Steve Mitchell
+ */
+public class BatchResult {
+    private final int total;
+    private final AtomicInteger converted = new AtomicInteger();
+    private final AtomicInteger missing = new AtomicInteger();
+    private final AtomicInteger unchanged = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong points = new AtomicLong();
+    private final Queue<Long> failedActivityIds = new ConcurrentLinkedQueue<Long>();
+    private final long startNanos = System.nanoTime();
+    private volatile long endNanos;
+
+    public BatchResult(final int total) {
+        this.total = total;
+    }
+
+    void addConverted(final int pointCount) {
+        converted.incrementAndGet();
+        points.addAndGet(pointCount);
+    }
+
+    void addMissing() {
+        missing.incrementAndGet();
+    }
+
+    void addUnchanged() {
+        unchanged.incrementAndGet();
+    }
+
+    void addFailed(final Long activityId) {
+        failed.incrementAndGet();
+        if (activityId != null) {
+            failedActivityIds.add(activityId);
+        }
+    }
+
+    void finish() {
+        endNanos = System.nanoTime();
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getConverted() {
+        return converted.get();
+    }
+
+    /**
+     * @return entries without a .fit or .tcx file (or without a running activity in the .tcx).
+     */
+    public int getMissing() {
+        return missing.get();
+    }
+
+    /**
+     * @return entries skipped because the import manifest showed their output was up to date.
+     */
+    public int getUnchanged() {
+        return unchanged.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    public int getCompleted() {
+        return converted.get() + missing.get() + unchanged.get() + failed.get();
+    }
+
+    public long getPoints() {
+        return points.get();
+    }
+
+    public List<Long> getFailedActivityIds() {
+        return new ArrayList<Long>(failedActivityIds);
+    }
+
+    public long getElapsedMillis() {
+        final long end = endNanos == 0 ? System.nanoTime() : endNanos;
+        return (end - startNanos) / 1000000L;
+    }
+
+    public double getActivitiesPerSecond() {
+        return perSecond(getCompleted());
+    }
+
+    public double getPointsPerSecond() {
+        return perSecond(getPoints());
+    }
+
+    private double perSecond(final long count) {
+        final long millis = getElapsedMillis();
+        return millis == 0 ? 0D : count * 1000D / millis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d of %d activities in %d ms (%d converted, %d unchanged, %d missing, %d failed): %.1f activities/s, %.0f points/s",
+                getCompleted(), total, getElapsedMillis(), getConverted(), getUnchanged(), getMissing(), getFailed(),
+                getActivitiesPerSecond(), getPointsPerSecond());
+    }
+}
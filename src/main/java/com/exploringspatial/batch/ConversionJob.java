@@ -0,0 +1,116 @@
+package com.exploringspatial.batch;
+
+import com.exploringspatial.domain.FitActivity;
+import com.vividsolutions.jts.geom.Geometry;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+/**
+ * The ConversionJob class carries one catalog entry through the conversion steps:
+ * the raw input read from disk, the decoded activity and the simplified track.
+ * Each step fills in its part and the previous part is released once consumed.
+ *
+ * @author Steve Mitchell
+ */
+public class ConversionJob {
+    private final FitActivity entry;
+    private File inputFile;
+    private long inputSize;
+    private long inputLastModified;
+    private boolean tcx;
+    private boolean unchanged;
+    private String hash;
+    private ByteBuffer input;
+    private FitActivity fitActivity;
+    private Geometry geometry;
+
+    public ConversionJob(final FitActivity entry) {
+        this.entry = entry;
+    }
+
+    /**
+     * @return the catalog entry this job was created for.
+     */
+    public FitActivity getEntry() {
+        return entry;
+    }
+
+    public File getInputFile() {
+        return inputFile;
+    }
+
+    public void setInputFile(final File inputFile) {
+        this.inputFile = inputFile;
+    }
+
+    public long getInputSize() {
+        return inputSize;
+    }
+
+    public void setInputSize(final long inputSize) {
+        this.inputSize = inputSize;
+    }
+
+    public long getInputLastModified() {
+        return inputLastModified;
+    }
+
+    public void setInputLastModified(final long inputLastModified) {
+        this.inputLastModified = inputLastModified;
+    }
+
+    public boolean isTcx() {
+        return tcx;
+    }
+
+    public void setTcx(final boolean tcx) {
+        this.tcx = tcx;
+    }
+
+    /**
+     * @return true when the import manifest shows the output is already up to date.
+     */
+    public boolean isUnchanged() {
+        return unchanged;
+    }
+
+    public void setUnchanged(final boolean unchanged) {
+        this.unchanged = unchanged;
+    }
+
+    /**
+     * @return the hash of the input content, set when an import manifest is in use.
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(final String hash) {
+        this.hash = hash;
+    }
+
+    public ByteBuffer getInput() {
+        return input;
+    }
+
+    public void setInput(final ByteBuffer input) {
+        this.input = input;
+    }
+
+    public FitActivity getFitActivity() {
+        return fitActivity;
+    }
+
+    public void setFitActivity(final FitActivity fitActivity) {
+        this.fitActivity = fitActivity;
+    }
+
+    public Geometry getGeometry() {
+        return geometry;
+    }
+
+    public void setGeometry(final Geometry geometry) {
+        this.geometry = geometry;
+    }
+}
@@ -0,0 +1,299 @@
+package com.exploringspatial.batch;
+
+import com.exploringspatial.domain.FitActivity;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The purpose of this class is to convert catalog entries through separate read, decode,
+ * simplify and write stages. Each stage has its own threads and takes its work from a
+ * bounded queue, so I/O bound and CPU bound steps are sized independently and a slow
+ * disk blocks the upstream stages instead of letting decoded activities pile up in memory.
+ *
+ * Failures are isolated per activity as in {@link BatchConverter}. While a batch runs the
+ * state of every stage is logged at the report interval and can be read from getStages().
+ *
+ * @author Steve Mitchell
+ */
+public class ConversionPipeline {
+    private static final ConversionJob END = new ConversionJob(null);
+    private final Logger log = Logger.getLogger(ConversionPipeline.class);
+    private final ActivityConverter activityConverter;
+    private int readers = 2;
+    private int decoders = Runtime.getRuntime().availableProcessors();
+    private int simplifiers = Runtime.getRuntime().availableProcessors();
+    private int writers = 2;
+    private int queueCapacity = 64;
+    private long reportIntervalSeconds = 10;
+    private volatile List<PipelineStage> stages = Collections.emptyList();
+
+    public ConversionPipeline(final ActivityConverter activityConverter) {
+        this.activityConverter = activityConverter;
+    }
+
+    public int getReaders() {
+        return readers;
+    }
+
+    /**
+     * @param readers - Number of threads reading input files. At least 1.
+     */
+    public void setReaders(final int readers) {
+        this.readers = checkPositive("readers", readers);
+    }
+
+    public int getDecoders() {
+        return decoders;
+    }
+
+    /**
+     * @param decoders - Number of threads decoding. At least 1.
+     */
+    public void setDecoders(final int decoders) {
+        this.decoders = checkPositive("decoders", decoders);
+    }
+
+    public int getSimplifiers() {
+        return simplifiers;
+    }
+
+    /**
+     * @param simplifiers - Number of threads simplifying. At least 1.
+     */
+    public void setSimplifiers(final int simplifiers) {
+        this.simplifiers = checkPositive("simplifiers", simplifiers);
+    }
+
+    public int getWriters() {
+        return writers;
+    }
+
+    /**
+     * @param writers - Number of threads writing GeoJSON. At least 1.
+     */
+    public void setWriters(final int writers) {
+        this.writers = checkPositive("writers", writers);
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @param queueCapacity - Maximum number of jobs waiting in front of each stage. At least 1.
+     */
+    public void setQueueCapacity(final int queueCapacity) {
+        this.queueCapacity = checkPositive("queueCapacity", queueCapacity);
+    }
+
+    public long getReportIntervalSeconds() {
+        return reportIntervalSeconds;
+    }
+
+    /**
+     * @param reportIntervalSeconds - Seconds between logged reports. At least 1.
+     */
+    public void setReportIntervalSeconds(final long reportIntervalSeconds) {
+        if (reportIntervalSeconds < 1) {
+            throw new IllegalArgumentException("reportIntervalSeconds must be at least 1, not " + reportIntervalSeconds);
+        }
+        this.reportIntervalSeconds = reportIntervalSeconds;
+    }
+
+    /**
+     * @return the stages of the running (or last) batch, in pipeline order.
+     */
+    public List<PipelineStage> getStages() {
+        return stages;
+    }
+
+    /**
+     * The purpose of this method is to push every entry through the pipeline and wait
+     * until the last one has been written or has failed. If the wait is interrupted the
+     * stage threads are interrupted too, so none of them outlives the call.
+     *
+     * @param entries - Catalog entries to convert.
+     * @return counts, failed activity ids and throughput for the batch.
+     * @throws InterruptedException if interrupted while waiting for the stages.
+     */
+    public BatchResult convert(final List<FitActivity> entries) throws InterruptedException {
+        final BatchResult result = new BatchResult(entries.size());
+        final List<PipelineStage> batchStages = new ArrayList<PipelineStage>();
+        batchStages.add(createStage(PipelineStage.Step.READ, readers));
+        batchStages.add(createStage(PipelineStage.Step.DECODE, decoders));
+        batchStages.add(createStage(PipelineStage.Step.SIMPLIFY, simplifiers));
+        batchStages.add(createStage(PipelineStage.Step.WRITE, writers));
+        stages = Collections.unmodifiableList(batchStages);
+
+        final CountDownLatch done = new CountDownLatch(writers);
+        final List<Thread> threads = new ArrayList<Thread>();
+        boolean finished = false;
+        try {
+            for (int i = 0; i < batchStages.size(); i++) {
+                final PipelineStage stage = batchStages.get(i);
+                final PipelineStage next = i + 1 < batchStages.size() ? batchStages.get(i + 1) : null;
+                final AtomicInteger running = new AtomicInteger(stage.getThreads());
+                stage.start();
+                for (int t = 0; t < stage.getThreads(); t++) {
+                    threads.add(startThread("pipeline-" + stage.getStep().name().toLowerCase() + "-" + (t + 1),
+                            new StageWorker(stage, next, running, result, done)));
+                }
+            }
+            threads.add(startThread("pipeline-feeder", new Runnable() {
+                @Override
+                public void run() {
+                    final PipelineStage first = batchStages.get(0);
+                    try {
+                        for (final FitActivity entry : entries) {
+                            first.getInput().put(new ConversionJob(entry));
+                        }
+                        for (int t = 0; t < first.getThreads(); t++) {
+                            first.getInput().put(END);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }));
+
+            while (!done.await(reportIntervalSeconds, TimeUnit.SECONDS)) {
+                report(result);
+            }
+            finished = true;
+        } finally {
+            if (!finished) {
+                for (final Thread thread : threads) {
+                    thread.interrupt();
+                }
+            }
+        }
+        result.finish();
+        report(result);
+        return result;
+    }
+
+    private PipelineStage createStage(final PipelineStage.Step step, final int threads) {
+        return new PipelineStage(step, threads, new ArrayBlockingQueue<ConversionJob>(queueCapacity), queueCapacity);
+    }
+
+    private void report(final BatchResult result) {
+        log.info(result);
+        for (final PipelineStage stage : stages) {
+            log.info(stage);
+        }
+    }
+
+    private static Thread startThread(final String name, final Runnable runnable) {
+        final Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static int checkPositive(final String name, final int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException(name + " must be at least 1, not " + value);
+        }
+        return value;
+    }
+
+    private class StageWorker implements Runnable {
+        private final PipelineStage stage;
+        private final PipelineStage next;
+        private final AtomicInteger running;
+        private final BatchResult result;
+        private final CountDownLatch done;
+
+        StageWorker(final PipelineStage stage, final PipelineStage next, final AtomicInteger running,
+                    final BatchResult result, final CountDownLatch done) {
+            this.stage = stage;
+            this.next = next;
+            this.running = running;
+            this.result = result;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            try {
+                ConversionJob job = stage.getInput().take();
+                while (job != END) {
+                    final long start = System.nanoTime();
+                    final ConversionJob output = process(job);
+                    stage.record(System.nanoTime() - start);
+                    if (output != null && next != null) {
+                        next.getInput().put(output);
+                    }
+                    job = stage.getInput().take();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (next == null) {
+                    done.countDown();
+                } else if (running.decrementAndGet() == 0) {
+                    endStage(next);
+                }
+            }
+        }
+
+        /**
+         * The purpose of this method is to tell every thread of the next stage that no more
+         * jobs are coming, once the last thread of this stage has finished.
+         */
+        private void endStage(final PipelineStage stage) {
+            try {
+                for (int t = 0; t < stage.getThreads(); t++) {
+                    stage.getInput().put(END);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * @return the job for the next stage, or null when the job is finished or dropped.
+         */
+        private ConversionJob process(final ConversionJob job) {
+            final FitActivity entry = job.getEntry();
+            try {
+                switch (stage.getStep()) {
+                    case READ:
+                        final ConversionJob read = activityConverter.read(entry);
+                        if (read == null) {
+                            result.addMissing();
+                            return null;
+                        }
+                        if (read.isUnchanged()) {
+                            result.addUnchanged();
+                            return null;
+                        }
+                        return read;
+                    case DECODE:
+                        if (!activityConverter.decode(job)) {
+                            result.addMissing();
+                            return null;
+                        }
+                        return job;
+                    case SIMPLIFY:
+                        activityConverter.simplify(job);
+                        return job;
+                    default:
+                        result.addConverted(activityConverter.write(job));
+                        return null;
+                }
+            } catch (Exception e) {
+                log.error("Failed to " + stage.getStep().name().toLowerCase() + " activity " + entry.getActivityId(), e);
+                result.addFailed(entry.getActivityId());
+                return null;
+            }
+        }
+    }
+}
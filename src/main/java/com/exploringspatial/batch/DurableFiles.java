@@ -0,0 +1,96 @@
+package com.exploringspatial.batch;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The purpose of this class is to write output files so that a file is never reported
+ * finished before it is on disk. The content of a temporary file is forced before the
+ * stream closes, and the directory is forced after the file is renamed into place, so
+ * after a crash a file recorded in the checkpoint is there in full.
+ *
+ * @author Steve Mitchell
+ */
+final class DurableFiles {
+
+    private DurableFiles() {
+    }
+
+    /**
+     * @param file - The temporary file; created, or truncated if it exists.
+     * @return a buffered stream that forces the file to disk when it is closed.
+     * @throws IOException when the file cannot be opened.
+     */
+    static OutputStream create(final File file) throws IOException {
+        return new ForcedOutputStream(FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    /**
+     * The purpose of this method is to rename a finished temporary file over its final
+     * name, atomically where the file system allows, and force the rename to disk.
+     *
+     * @param temp - The finished temporary file.
+     * @param file - The final name, replaced if it exists.
+     * @throws IOException when the file cannot be moved.
+     */
+    static void moveIntoPlace(final File temp, final File file) throws IOException {
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        forceDirectory(file.getAbsoluteFile().getParentFile());
+    }
+
+    private static void forceDirectory(final File dir) throws IOException {
+        final FileChannel channel;
+        try {
+            channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            // Windows cannot open a directory; NTFS journals the rename itself.
+            return;
+        }
+        try {
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * A buffered stream over a file channel that flushes and forces the channel before
+     * closing it. Closing it again does nothing.
+     */
+    private static class ForcedOutputStream extends BufferedOutputStream {
+        private final FileChannel channel;
+        private boolean closed;
+
+        ForcedOutputStream(final FileChannel channel) {
+            super(Channels.newOutputStream(channel), 64 * 1024);
+            this.channel = channel;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                flush();
+                channel.force(true);
+            } finally {
+                super.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.exploringspatial.batch;
+
+import com.exploringspatial.domain.FitActivity;
+import com.exploringspatial.geojson.FeatureCollectionWriter;
+import com.exploringspatial.service.GarminFitService;
+import com.vividsolutions.jts.geom.Geometry;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The purpose of this class is to gather the activities of an import into a few GeoJSON
+ * FeatureCollections, so a map of an athlete's history is a handful of file reads instead
+ * of one per activity. With byYear set there is one collection per year of start time,
+ * named e.g. 2014.geojson, plus unknown.geojson for activities without one; otherwise
+ * every activity goes into activities.geojson.
+ *
+ * A collection is opened on its first activity and streamed to a temporary file, then
+ * forced to disk and renamed into place by close, so readers never see a collection cut
+ * short.
+ *
+ * Safe to call from several threads at once.
+ *
+ * @author Steve Mitchell
+ */
+public class FeatureCollections implements Closeable {
+    public static final String ALL = "activities";
+    public static final String UNKNOWN_YEAR = "unknown";
+    public static final String EXTENSION = ".geojson";
+    private final GarminFitService garminFitService;
+    private final File collectionDir;
+    private final boolean byYear;
+    private final Map<String, FeatureCollectionWriter> writers = new TreeMap<String, FeatureCollectionWriter>();
+
+    /**
+     * @param garminFitService - Supplies the coordinate precision.
+     * @param collectionDir    - Directory the collections are written to.
+     * @param byYear           - True for one collection per year, false for a single collection.
+     */
+    public FeatureCollections(final GarminFitService garminFitService, final File collectionDir, final boolean byYear) {
+        this.garminFitService = garminFitService;
+        this.collectionDir = collectionDir;
+        this.byYear = byYear;
+    }
+
+    public File getCollectionDir() {
+        return collectionDir;
+    }
+
+    public boolean isByYear() {
+        return byYear;
+    }
+
+    /**
+     * The purpose of this method is to append an activity to its collection.
+     *
+     * @param fitActivity - Source of the feature properties.
+     * @param geometry    - The simplified track.
+     * @throws IOException when the collection cannot be opened or written.
+     */
+    public void add(final FitActivity fitActivity, final Geometry geometry) throws IOException {
+        getWriter(collectionName(fitActivity)).writeFeature(fitActivity, geometry);
+    }
+
+    /**
+     * @return the name of the collection an activity belongs in, without the extension.
+     */
+    public String collectionName(final FitActivity fitActivity) {
+        if (!byYear) {
+            return ALL;
+        }
+        final String startTime = fitActivity.getStartTime();
+        if (startTime == null || startTime.length() < 4) {
+            return UNKNOWN_YEAR;
+        }
+        for (int i = 0; i < 4; i++) {
+            if (!Character.isDigit(startTime.charAt(i))) {
+                return UNKNOWN_YEAR;
+            }
+        }
+        return startTime.substring(0, 4);
+    }
+
+    /**
+     * @return the number of features in each collection opened so far, by name.
+     */
+    public synchronized Map<String, Integer> getCounts() {
+        final Map<String, Integer> counts = new TreeMap<String, Integer>();
+        for (final Map.Entry<String, FeatureCollectionWriter> entry : writers.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().getCount());
+        }
+        return counts;
+    }
+
+    /**
+     * The purpose of this method is to end every collection and move it into place.
+     *
+     * @throws IOException when a collection cannot be finished.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        IOException failure = null;
+        for (final Map.Entry<String, FeatureCollectionWriter> entry : writers.entrySet()) {
+            try {
+                entry.getValue().close();
+                DurableFiles.moveIntoPlace(tempFile(entry.getKey()), new File(collectionDir, entry.getKey() + EXTENSION));
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        writers.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private synchronized FeatureCollectionWriter getWriter(final String name) throws IOException {
+        FeatureCollectionWriter writer = writers.get(name);
+        if (writer == null) {
+            writer = garminFitService.openFeatureCollection(DurableFiles.create(tempFile(name)));
+            writers.put(name, writer);
+        }
+        return writer;
+    }
+
+    private File tempFile(final String name) {
+        return new File(collectionDir, name + EXTENSION + ".tmp");
+    }
+}
@@ -0,0 +1,130 @@
+package com.exploringspatial.batch;
+
+import com.exploringspatial.domain.FitActivity;
+import com.exploringspatial.geojson.FeatureSequenceWriter;
+import com.exploringspatial.service.GarminFitService;
+import com.vividsolutions.jts.geom.Geometry;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The purpose of this class is to write the activities of an import as GeoJSON text
+ * sequences, one feature per line, for loaders that split files and load the pieces in
+ * parallel. Files are numbered activities-00000.geojsons, activities-00001.geojsons and
+ * so on (.ndjson without the RFC 8142 record separator). With a rotation size set, a file
+ * is finished once it reaches that many bytes and the next feature starts a new one, so
+ * a file is at most one feature larger than the rotation size.
+ *
+ * Each file is streamed to a temporary file, then forced to disk and renamed into place
+ * when it is finished, so loaders watching the directory never see a file cut short.
+ *
+ * Safe to call from several threads at once.
+ *
+ * @author Steve Mitchell
+ */
+public class FeatureSequenceFiles implements Closeable {
+    public static final String BASE_NAME = "activities";
+    public static final String SEQUENCE_EXTENSION = ".geojsons";
+    public static final String LINES_EXTENSION = ".ndjson";
+    private final GarminFitService garminFitService;
+    private final File sequenceDir;
+    private final boolean recordSeparator;
+    private final long rotationSize;
+    private final List<File> files = new ArrayList<File>();
+    private FeatureSequenceWriter writer;
+    private int count;
+
+    /**
+     * @param garminFitService - Supplies the coordinate precision.
+     * @param sequenceDir      - Directory the files are written to.
+     * @param recordSeparator  - True for RFC 8142 text sequences, false for newline delimited GeoJSON.
+     * @param rotationSize     - Bytes after which a file is finished, or 0 for a single file.
+     */
+    public FeatureSequenceFiles(final GarminFitService garminFitService, final File sequenceDir,
+                                final boolean recordSeparator, final long rotationSize) {
+        this.garminFitService = garminFitService;
+        this.sequenceDir = sequenceDir;
+        this.recordSeparator = recordSeparator;
+        this.rotationSize = rotationSize;
+    }
+
+    public File getSequenceDir() {
+        return sequenceDir;
+    }
+
+    public boolean isRecordSeparator() {
+        return recordSeparator;
+    }
+
+    public long getRotationSize() {
+        return rotationSize;
+    }
+
+    /**
+     * The purpose of this method is to append an activity as the next line, starting a
+     * new file first when there is none open.
+     *
+     * @param fitActivity - Source of the feature properties.
+     * @param geometry    - The simplified track.
+     * @throws IOException when a file cannot be opened, written or finished.
+     */
+    public synchronized void add(final FitActivity fitActivity, final Geometry geometry) throws IOException {
+        if (writer == null) {
+            writer = garminFitService.openFeatureSequence(DurableFiles.create(tempFile(files.size())), recordSeparator);
+            files.add(new File(sequenceDir, fileName(files.size())));
+        }
+        writer.writeFeature(fitActivity, geometry);
+        count++;
+        if (rotationSize > 0 && writer.getSize() >= rotationSize) {
+            finishFile();
+        }
+    }
+
+    /**
+     * @return the number of features written so far.
+     */
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * @return the files started so far, in order; the last may not be finished yet.
+     */
+    public synchronized List<File> getFiles() {
+        return new ArrayList<File>(files);
+    }
+
+    /**
+     * The purpose of this method is to finish the open file, if any.
+     *
+     * @throws IOException when the file cannot be finished.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            finishFile();
+        }
+    }
+
+    private void finishFile() throws IOException {
+        final int index = files.size() - 1;
+        try {
+            writer.close();
+        } finally {
+            writer = null;
+        }
+        DurableFiles.moveIntoPlace(tempFile(index), files.get(index));
+    }
+
+    private String fileName(final int index) {
+        return String.format("%s-%05d%s", BASE_NAME, index, recordSeparator ? SEQUENCE_EXTENSION : LINES_EXTENSION);
+    }
+
+    private File tempFile(final int index) {
+        return new File(sequenceDir, fileName(index) + ".tmp");
+    }
+}
@@ -0,0 +1,156 @@
+package com.exploringspatial.batch;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The purpose of this class is to record which activities an import has finished, so an
+ * import that dies part way through can be resumed instead of started over.
+ *
+ * Completed activity ids are appended to a text file, one per line. They are buffered and
+ * forced to disk every batchSize ids and on flush or close, so a crash loses at most one
+ * batch, which is simply converted again on resume. A line cut short by a crash is
+ * ignored when loading and truncated away before appending.
+ *
+ * With an {@link ImportManifest} set, the manifest is saved before each batch is written,
+ * so every activity the checkpoint records as finished is also in the saved manifest and
+ * later incremental runs skip it.
+ *
+ * Safe to call from several threads at once.
+ *
+ * @author Steve Mitchell
+ */
+public class ImportCheckpoint implements Closeable {
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    private final FileChannel channel;
+    private final int batchSize;
+    private final StringBuilder pending = new StringBuilder();
+    private int pendingCount;
+    private ImportManifest importManifest;
+    private File manifestFile;
+
+    /**
+     * @param file - The checkpoint file; created if missing, otherwise appended to.
+     * @throws IOException when the file cannot be opened.
+     */
+    public ImportCheckpoint(final File file) throws IOException {
+        this(file, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param file      - The checkpoint file; created if missing, otherwise appended to.
+     * @param batchSize - Number of ids buffered between forced writes.
+     * @throws IOException when the file cannot be opened.
+     */
+    public ImportCheckpoint(final File file, final int batchSize) throws IOException {
+        this.batchSize = batchSize;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.truncate(completeLength(file));
+        channel.position(channel.size());
+    }
+
+    /**
+     * @param importManifest - Manifest to save with every batch, or null.
+     * @param manifestFile   - File the manifest is saved to.
+     */
+    public synchronized void setImportManifest(final ImportManifest importManifest, final File manifestFile) {
+        this.importManifest = importManifest;
+        this.manifestFile = manifestFile;
+    }
+
+    /**
+     * The purpose of this method is to read the ids recorded by earlier runs.
+     *
+     * @param file - The checkpoint file; a missing file gives an empty set.
+     * @return the completed activity ids.
+     * @throws IOException when the file cannot be read.
+     */
+    public static Set<Long> load(final File file) throws IOException {
+        final Set<Long> activityIds = new HashSet<Long>();
+        if (!file.exists()) {
+            return activityIds;
+        }
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+        final String text = new String(bytes, 0, lastNewline(bytes) + 1, StandardCharsets.US_ASCII);
+        for (final String line : text.split("\n")) {
+            if (!line.isEmpty()) {
+                activityIds.add(Long.valueOf(line));
+            }
+        }
+        return activityIds;
+    }
+
+    /**
+     * The purpose of this method is to record a finished activity. Every batchSize-th
+     * call writes and forces the buffered ids.
+     *
+     * @param activityId - The finished activity.
+     * @throws IOException when the checkpoint cannot be written.
+     */
+    public synchronized void record(final Long activityId) throws IOException {
+        if (activityId == null) {
+            return;
+        }
+        pending.append(activityId).append('\n');
+        if (++pendingCount >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * The purpose of this method is to write the buffered ids and force them to disk,
+     * after saving the manifest if one is set.
+     *
+     * @throws IOException when the checkpoint or the manifest cannot be written.
+     */
+    public synchronized void flush() throws IOException {
+        if (pendingCount == 0) {
+            return;
+        }
+        if (importManifest != null) {
+            importManifest.save(manifestFile);
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(pending.toString().getBytes(StandardCharsets.US_ASCII));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+        pending.setLength(0);
+        pendingCount = 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * @return the length of the file up to and including its last newline.
+     */
+    private static long completeLength(final File file) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        return lastNewline(Files.readAllBytes(file.toPath())) + 1;
+    }
+
+    private static int lastNewline(final byte[] bytes) {
+        int i = bytes.length - 1;
+        while (i >= 0 && bytes[i] != '\n') {
+            i--;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,216 @@
+package com.exploringspatial.batch;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The purpose of this class is to remember what an import wrote, so the next run can
+ * skip activities whose input file, catalog entry and conversion settings are unchanged.
+ *
+ * The manifest is a tab separated text file with one line per activity: activity id,
+ * input file name, size, last modified time, SHA-1 of the content, SHA-1 of the catalog
+ * fields and the settings key of the conversion. Size and modified time are checked
+ * first; the content is only hashed when they differ, so an unchanged archive costs one
+ * stat per file.
+ *
+ * Records can be read and updated from several threads.
+ *
+ * @author Steve Mitchell
+ */
+public class ImportManifest {
+    public static final String HASH_ALGORITHM = "SHA-1";
+    private static final String HEADER = "#activityId\tfile\tsize\tlastModified\thash\tcatalog\tsettings";
+    private static final int COLUMNS = 7;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private final ConcurrentMap<Long, Record> records = new ConcurrentHashMap<Long, Record>();
+
+    /**
+     * The purpose of this method is to read a manifest written by save.
+     *
+     * @param file - The manifest file; a missing file gives an empty manifest.
+     * @return the manifest.
+     * @throws IOException when the file cannot be read or a line is malformed.
+     */
+    public static ImportManifest load(final File file) throws IOException {
+        final ImportManifest manifest = new ImportManifest();
+        if (!file.exists()) {
+            return manifest;
+        }
+        final BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+        try {
+            String line = reader.readLine();
+            int lineNumber = 1;
+            while (line != null) {
+                if (!line.isEmpty() && line.charAt(0) != '#') {
+                    final String[] columns = line.split("\t", -1);
+                    if (columns.length != COLUMNS) {
+                        throw new IOException("Malformed manifest line " + lineNumber + " in " + file);
+                    }
+                    manifest.put(new Record(Long.valueOf(columns[0]), columns[1], Long.parseLong(columns[2]),
+                            Long.parseLong(columns[3]), columns[4], columns[5], columns[6]));
+                }
+                line = reader.readLine();
+                lineNumber++;
+            }
+        } finally {
+            reader.close();
+        }
+        return manifest;
+    }
+
+    /**
+     * The purpose of this method is to write the manifest, sorted by activity id. It is
+     * written to a temporary file, forced to disk and moved into place, so an interrupted
+     * save leaves the previous manifest intact.
+     *
+     * @param file - The manifest file.
+     * @throws IOException when the file cannot be written.
+     */
+    public synchronized void save(final File file) throws IOException {
+        final List<Long> activityIds = new ArrayList<Long>(records.keySet());
+        Collections.sort(activityIds);
+        final File temp = new File(file.getPath() + ".tmp");
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(DurableFiles.create(temp), StandardCharsets.UTF_8));
+        try {
+            writer.write(HEADER);
+            writer.write('\n');
+            for (final Long activityId : activityIds) {
+                final Record record = records.get(activityId);
+                writer.write(record.activityId + "\t" + record.fileName + "\t" + record.size + "\t"
+                        + record.lastModified + "\t" + record.hash + "\t" + record.catalog + "\t"
+                        + record.settings + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+        DurableFiles.moveIntoPlace(temp, file);
+    }
+
+    public Record get(final Long activityId) {
+        return records.get(activityId);
+    }
+
+    public void put(final Record record) {
+        records.put(record.getActivityId(), record);
+    }
+
+    public int size() {
+        return records.size();
+    }
+
+    /**
+     * The purpose of this method is to hash the remaining bytes of a buffer without
+     * moving its position.
+     *
+     * @param buffer - The input file content.
+     * @return the SHA-1 of the content as lower case hex.
+     */
+    public static String hash(final ByteBuffer buffer) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(buffer.duplicate());
+        final byte[] bytes = digest.digest();
+        final char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX[(bytes[i] >> 4) & 0x0F];
+            hex[i * 2 + 1] = HEX[bytes[i] & 0x0F];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * @param text - Text to fingerprint, e.g. the catalog fields of an activity.
+     * @return the SHA-1 of the UTF-8 text as lower case hex.
+     */
+    public static String hash(final String text) {
+        return hash(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * The Record class is the manifest line for one activity.
+     */
+    public static class Record {
+        private final Long activityId;
+        private final String fileName;
+        private final long size;
+        private final long lastModified;
+        private final String hash;
+        private final String catalog;
+        private final String settings;
+
+        /**
+         * @param activityId   - Activity id from the catalog.
+         * @param fileName     - Name of the .fit or .tcx file converted.
+         * @param size         - Size of the input file in bytes.
+         * @param lastModified - Last modified time of the input file in milliseconds.
+         * @param hash         - SHA-1 of the input file content.
+         * @param catalog      - SHA-1 of the catalog fields copied into the feature.
+         * @param settings     - Key of every conversion setting that shapes the output.
+         */
+        public Record(final Long activityId, final String fileName, final long size, final long lastModified,
+                      final String hash, final String catalog, final String settings) {
+            this.activityId = activityId;
+            this.fileName = fileName;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.catalog = catalog;
+            this.settings = settings;
+        }
+
+        public Long getActivityId() {
+            return activityId;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public String getCatalog() {
+            return catalog;
+        }
+
+        public String getSettings() {
+            return settings;
+        }
+
+        /**
+         * @return true when the file name, size and modified time are those recorded.
+         */
+        public boolean matchesFile(final String fileName, final long size, final long lastModified) {
+            return this.fileName.equals(fileName) && this.size == size && this.lastModified == lastModified;
+        }
+
+        /**
+         * @return true when the catalog fields and conversion settings are those recorded.
+         */
+        public boolean matchesSettings(final String catalog, final String settings) {
+            return this.catalog.equals(catalog) && this.settings.equals(settings);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.exploringspatial.batch;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The PipelineStage class describes one step of a {@link ConversionPipeline}: how many
+ * threads run it, the bounded queue feeding it and how much work it has done. The
+ * counters are updated by the stage's workers and can be read at any time.
+ *
+ * @author Steve Mitchell
+ */
+public class PipelineStage {
+
+    /**
+     * The conversion steps, in pipeline order.
+     */
+    public enum Step {
+        READ, DECODE, SIMPLIFY, WRITE
+    }
+
+    private final Step step;
+    private final int threads;
+    private final BlockingQueue<ConversionJob> input;
+    private final int queueCapacity;
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private volatile long startNanos;
+
+    PipelineStage(final Step step, final int threads, final BlockingQueue<ConversionJob> input, final int queueCapacity) {
+        this.step = step;
+        this.threads = threads;
+        this.input = input;
+        this.queueCapacity = queueCapacity;
+    }
+
+    BlockingQueue<ConversionJob> getInput() {
+        return input;
+    }
+
+    void start() {
+        startNanos = System.nanoTime();
+    }
+
+    void record(final long nanos) {
+        processed.incrementAndGet();
+        busyNanos.addAndGet(nanos);
+    }
+
+    public Step getStep() {
+        return step;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return jobs waiting for this stage; a full queue means this stage is the bottleneck.
+     */
+    public int getQueueDepth() {
+        return input.size();
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    /**
+     * @return time spent processing jobs, summed over the stage's threads.
+     */
+    public long getBusyMillis() {
+        return busyNanos.get() / 1000000L;
+    }
+
+    public double getJobsPerSecond() {
+        final long elapsed = System.nanoTime() - startNanos;
+        return startNanos == 0 || elapsed == 0 ? 0D : processed.get() * 1000000000D / elapsed;
+    }
+
+    /**
+     * @return the fraction of the stage's thread time spent processing rather than waiting.
+     */
+    public double getUtilization() {
+        final long elapsed = System.nanoTime() - startNanos;
+        return startNanos == 0 || elapsed == 0 ? 0D : busyNanos.get() / ((double) elapsed * threads);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-8s threads=%d queue=%d/%d processed=%d %.1f jobs/s utilization=%.0f%%",
+                step, threads, getQueueDepth(), queueCapacity, getProcessed(), getJobsPerSecond(), getUtilization() * 100D);
+    }
+}
@@ -1,7 +1,7 @@
 package com.exploringspatial.domain;
 
 import com.vividsolutions.jts.geom.Coordinate;
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.List;
 
 /**
@@ -24,7 +24,7 @@ public class FitActivity {
     private String sport;
     private Double totalMeters;
     private Double totalSeconds;
-    private List<Coordinate> polyline = new ArrayList<Coordinate>();
+    private FitTrack track = new FitTrack();
 
     public Long getActivityId() {
         return activityId;
@@ -82,18 +82,53 @@ public class FitActivity {
         this.totalSeconds = totalSeconds;
     }
 
+    public FitTrack getTrack() {
+        return track;
+    }
+
+    public void setTrack(final FitTrack track) {
+        this.track = track;
+    }
+
+    /**
+     * The polyline is a view of the track; each get creates a new Coordinate
+     * (x = longitude, y = latitude, z = time) and changes to it are not written back.
+     * Prefer getTrack() on hot paths.
+     */
     public List<Coordinate> getPolyline() {
-        return polyline;
+        return new PolylineView();
     }
 
     public void setPolyline(final List<Coordinate> polyline) {
-        this.polyline = polyline;
+        this.track = new FitTrack(Math.max(polyline.size(), 1));
+        for (final Coordinate coordinate : polyline) {
+            addCoordinate(coordinate);
+        }
     }
 
     public void addCoordinate(final Coordinate coordinate) {
-        if (this.polyline == null) {
-            this.polyline = new ArrayList<Coordinate>(1);
+        if (this.track == null) {
+            this.track = new FitTrack(1);
+        }
+        this.track.add(coordinate.x, coordinate.y, Double.isNaN(coordinate.z) ? FitTrack.NO_TIME : (long) coordinate.z);
+    }
+
+    private class PolylineView extends AbstractList<Coordinate> {
+        @Override
+        public Coordinate get(final int index) {
+            final long time = track.getTime(index);
+            return new Coordinate(track.getLongitude(index), track.getLatitude(index), time == FitTrack.NO_TIME ? Double.NaN : time);
+        }
+
+        @Override
+        public int size() {
+            return track == null ? 0 : track.size();
+        }
+
+        @Override
+        public boolean add(final Coordinate coordinate) {
+            addCoordinate(coordinate);
+            return true;
         }
-        this.polyline.add(coordinate);
     }
 }
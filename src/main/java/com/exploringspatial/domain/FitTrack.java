@@ -0,0 +1,262 @@
+package com.exploringspatial.domain;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+
+import java.util.Arrays;
+
+/**
+ * The FitTrack class holds the points of an activity in growable primitive columns
+ * instead of one Coordinate object per point. Longitude and latitude are read in degrees,
+ * timestamps are epoch milliseconds and altitude, when any point has one, is in meters.
+ *
+ * A track either stores degrees as doubles or, in semicircle mode, the raw FIT
+ * semicircle integers, which takes half the memory. Semicircles are only converted to
+ * degrees when a position is read, with the same arithmetic the FIT listener always used.
+ * The timestamp and altitude columns are only allocated once a point has a value for them.
+ *
+ * @author Steve Mitchell
+ */
+public class FitTrack {
+    public static final long NO_TIME = Long.MIN_VALUE;
+    /**
+     * Degrees per semicircle: 180 / 2^31.
+     */
+    public static final double SEMICIRCLES_TO_DEGREES = 180D / 2147483648D;
+    private static final double DEGREES_TO_SEMICIRCLES = 2147483648D / 180D;
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private final boolean semicircles;
+    private int capacity;
+    private double[] longitudes;
+    private double[] latitudes;
+    private int[] longitudeSemicircles;
+    private int[] latitudeSemicircles;
+    private long[] times;
+    private float[] altitudes;
+    private int size;
+
+    public FitTrack() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public FitTrack(final int capacity) {
+        this(capacity, false);
+    }
+
+    public FitTrack(final boolean semicircles) {
+        this(DEFAULT_CAPACITY, semicircles);
+    }
+
+    /**
+     * @param capacity    - Initial number of points.
+     * @param semicircles - When true positions are stored as FIT semicircle integers.
+     */
+    public FitTrack(final int capacity, final boolean semicircles) {
+        this.semicircles = semicircles;
+        this.capacity = capacity;
+        if (semicircles) {
+            longitudeSemicircles = new int[capacity];
+            latitudeSemicircles = new int[capacity];
+        } else {
+            longitudes = new double[capacity];
+            latitudes = new double[capacity];
+        }
+    }
+
+    public boolean isSemicircles() {
+        return semicircles;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void add(final double longitude, final double latitude) {
+        add(longitude, latitude, NO_TIME);
+    }
+
+    public void add(final double longitude, final double latitude, final long time) {
+        ensureCapacity(size + 1);
+        if (semicircles) {
+            longitudeSemicircles[size] = toSemicircles(longitude);
+            latitudeSemicircles[size] = toSemicircles(latitude);
+        } else {
+            longitudes[size] = longitude;
+            latitudes[size] = latitude;
+        }
+        appendTimeAndAltitude(time);
+    }
+
+    public void add(final double longitude, final double latitude, final long time, final float altitude) {
+        if (altitudes == null) {
+            altitudes = new float[capacity];
+            Arrays.fill(altitudes, 0, size, Float.NaN);
+        }
+        add(longitude, latitude, time);
+        altitudes[size - 1] = altitude;
+    }
+
+    /**
+     * The purpose of this method is to append a FIT position without converting it.
+     * On a degree track the position is converted on the way in.
+     *
+     * @param longitude - position_long in semicircles.
+     * @param latitude  - position_lat in semicircles.
+     */
+    public void addSemicircles(final int longitude, final int latitude) {
+        addSemicircles(longitude, latitude, NO_TIME);
+    }
+
+    public void addSemicircles(final int longitude, final int latitude, final long time) {
+        ensureCapacity(size + 1);
+        if (semicircles) {
+            longitudeSemicircles[size] = longitude;
+            latitudeSemicircles[size] = latitude;
+        } else {
+            longitudes[size] = longitude * SEMICIRCLES_TO_DEGREES;
+            latitudes[size] = latitude * SEMICIRCLES_TO_DEGREES;
+        }
+        appendTimeAndAltitude(time);
+    }
+
+    public double getLongitude(final int index) {
+        checkIndex(index);
+        return semicircles ? longitudeSemicircles[index] * SEMICIRCLES_TO_DEGREES : longitudes[index];
+    }
+
+    public double getLatitude(final int index) {
+        checkIndex(index);
+        return semicircles ? latitudeSemicircles[index] * SEMICIRCLES_TO_DEGREES : latitudes[index];
+    }
+
+    /**
+     * @return epoch milliseconds, or NO_TIME when the point has no timestamp.
+     */
+    public long getTime(final int index) {
+        checkIndex(index);
+        return times == null ? NO_TIME : times[index];
+    }
+
+    /**
+     * @return meters, or NaN when the point has no altitude.
+     */
+    public float getAltitude(final int index) {
+        checkIndex(index);
+        return altitudes == null ? Float.NaN : altitudes[index];
+    }
+
+    public boolean hasAltitude() {
+        return altitudes != null;
+    }
+
+    void setLongitude(final int index, final double longitude) {
+        checkIndex(index);
+        if (semicircles) {
+            longitudeSemicircles[index] = toSemicircles(longitude);
+        } else {
+            longitudes[index] = longitude;
+        }
+    }
+
+    void setLatitude(final int index, final double latitude) {
+        checkIndex(index);
+        if (semicircles) {
+            latitudeSemicircles[index] = toSemicircles(latitude);
+        } else {
+            latitudes[index] = latitude;
+        }
+    }
+
+    void setTime(final int index, final long time) {
+        checkIndex(index);
+        if (times == null) {
+            if (time == NO_TIME) {
+                return;
+            }
+            allocateTimes();
+        }
+        times[index] = time;
+    }
+
+    public void clear() {
+        size = 0;
+        times = null;
+        altitudes = null;
+    }
+
+    /**
+     * The purpose of this method is to release the spare capacity once a track is complete,
+     * for example before it is kept in a cache.
+     */
+    public void trimToSize() {
+        if (size < capacity) {
+            resize(size);
+        }
+    }
+
+    /**
+     * The purpose of this method is to let JTS read the track without copying it
+     * into Coordinate objects first.
+     *
+     * @return a CoordinateSequence backed by this track (x = longitude, y = latitude, z = time).
+     */
+    public CoordinateSequence toCoordinateSequence() {
+        return new FitTrackCoordinateSequence(this);
+    }
+
+    private void appendTimeAndAltitude(final long time) {
+        if (times == null && time != NO_TIME) {
+            allocateTimes();
+        }
+        if (times != null) {
+            times[size] = time;
+        }
+        if (altitudes != null) {
+            altitudes[size] = Float.NaN;
+        }
+        size++;
+    }
+
+    private void allocateTimes() {
+        times = new long[capacity];
+        Arrays.fill(times, 0, size, NO_TIME);
+    }
+
+    private void ensureCapacity(final int minCapacity) {
+        if (minCapacity > capacity) {
+            resize(Math.max(minCapacity, capacity + (capacity >> 1) + 1));
+        }
+    }
+
+    private void resize(final int newCapacity) {
+        if (semicircles) {
+            longitudeSemicircles = Arrays.copyOf(longitudeSemicircles, newCapacity);
+            latitudeSemicircles = Arrays.copyOf(latitudeSemicircles, newCapacity);
+        } else {
+            longitudes = Arrays.copyOf(longitudes, newCapacity);
+            latitudes = Arrays.copyOf(latitudes, newCapacity);
+        }
+        if (times != null) {
+            times = Arrays.copyOf(times, newCapacity);
+        }
+        if (altitudes != null) {
+            altitudes = Arrays.copyOf(altitudes, newCapacity);
+        }
+        capacity = newCapacity;
+    }
+
+    private int checkIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return index;
+    }
+
+    private static int toSemicircles(final double degrees) {
+        return (int) Math.round(degrees * DEGREES_TO_SEMICIRCLES);
+    }
+}
@@ -0,0 +1,130 @@
+package com.exploringspatial.domain;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * The purpose of this class is to expose a {@link FitTrack} to JTS as a
+ * CoordinateSequence without copying it. Ordinates are read straight from the
+ * track's columns; Coordinate objects are only created when JTS asks for them.
+ *
+ * X is longitude, Y is latitude and Z is the timestamp in epoch milliseconds
+ * (NaN when the point has none), the same layout the TCX parser always used.
+ *
+ * @author Steve Mitchell
+ */
+public class FitTrackCoordinateSequence implements CoordinateSequence {
+    private final FitTrack track;
+
+    public FitTrackCoordinateSequence(final FitTrack track) {
+        this.track = track;
+    }
+
+    public FitTrack getTrack() {
+        return track;
+    }
+
+    @Override
+    public int getDimension() {
+        return 3;
+    }
+
+    @Override
+    public Coordinate getCoordinate(final int i) {
+        return getCoordinateCopy(i);
+    }
+
+    @Override
+    public Coordinate getCoordinateCopy(final int i) {
+        return new Coordinate(track.getLongitude(i), track.getLatitude(i), getZ(i));
+    }
+
+    @Override
+    public void getCoordinate(final int index, final Coordinate coord) {
+        coord.x = track.getLongitude(index);
+        coord.y = track.getLatitude(index);
+        coord.z = getZ(index);
+    }
+
+    @Override
+    public double getX(final int index) {
+        return track.getLongitude(index);
+    }
+
+    @Override
+    public double getY(final int index) {
+        return track.getLatitude(index);
+    }
+
+    @Override
+    public double getOrdinate(final int index, final int ordinateIndex) {
+        switch (ordinateIndex) {
+            case X:
+                return track.getLongitude(index);
+            case Y:
+                return track.getLatitude(index);
+            case Z:
+                return getZ(index);
+            default:
+                return Double.NaN;
+        }
+    }
+
+    @Override
+    public int size() {
+        return track.size();
+    }
+
+    @Override
+    public void setOrdinate(final int index, final int ordinateIndex, final double value) {
+        switch (ordinateIndex) {
+            case X:
+                track.setLongitude(index, value);
+                break;
+            case Y:
+                track.setLatitude(index, value);
+                break;
+            case Z:
+                track.setTime(index, Double.isNaN(value) ? FitTrack.NO_TIME : (long) value);
+                break;
+            default:
+                throw new IllegalArgumentException("invalid ordinateIndex " + ordinateIndex);
+        }
+    }
+
+    @Override
+    public Coordinate[] toCoordinateArray() {
+        final Coordinate[] coordinates = new Coordinate[track.size()];
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = getCoordinateCopy(i);
+        }
+        return coordinates;
+    }
+
+    @Override
+    public Envelope expandEnvelope(final Envelope env) {
+        for (int i = 0; i < track.size(); i++) {
+            env.expandToInclude(track.getLongitude(i), track.getLatitude(i));
+        }
+        return env;
+    }
+
+    @Override
+    public Object clone() {
+        final FitTrack copy = new FitTrack(Math.max(track.size(), 1));
+        for (int i = 0; i < track.size(); i++) {
+            if (track.hasAltitude()) {
+                copy.add(track.getLongitude(i), track.getLatitude(i), track.getTime(i), track.getAltitude(i));
+            } else {
+                copy.add(track.getLongitude(i), track.getLatitude(i), track.getTime(i));
+            }
+        }
+        return new FitTrackCoordinateSequence(copy);
+    }
+
+    private double getZ(final int index) {
+        final long time = track.getTime(index);
+        return time == FitTrack.NO_TIME ? Double.NaN : time;
+    }
+}
@@ -0,0 +1,17 @@
+package com.exploringspatial.fit;
+
+/**
+ * The decoders available behind GarminFitService.decodeFitFile.
+ *
+ * @author Steve Mitchell
+ */
+public enum FitDecodeEngine {
+    /**
+     * The Garmin FIT SDK Decode and MesgBroadcaster, which builds a Mesg per message.
+     */
+    SDK,
+    /**
+     * The in-project {@link FitDecoder}, which pushes primitive values into a {@link FitMesgSink}.
+     */
+    NATIVE
+}
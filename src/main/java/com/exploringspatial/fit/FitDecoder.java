@@ -0,0 +1,435 @@
+package com.exploringspatial.fit;
+
+import com.garmin.fit.CRC;
+import com.garmin.fit.FitRuntimeException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * The purpose of this class is to decode the FIT binary format without going through
+ * the SDK Decode and MesgBroadcaster. Definition messages are kept as primitive arrays
+ * per local message type and data message fields are pushed straight into a
+ * {@link FitMesgSink}, so no objects are created per message.
+ *
+ * Handles normal and compressed timestamp record headers, little and big endian
+ * architectures, developer data fields (skipped) and chained FIT files.
+ *
+ * An optional {@link FitProjection} limits what is delivered. Messages outside the
+ * projection are stepped over by their defined length without reading any field
+ * other than the timestamp, which compressed timestamp headers depend on.
+ *
+ * Instances hold decode state and are not thread safe; create one per thread.
+ *
+ * @author Steve Mitchell
+ */
+public class FitDecoder {
+    public static final int FIELD_NUM_TIMESTAMP = 253;
+
+    private static final int MAX_LOCAL_MESGS = 16;
+    private static final int MIN_FILE_HDR_SIZE = 12;
+    private static final int FILE_CRC_SIZE = 2;
+    private static final int MAX_PROTOCOL_VERSION_MAJOR = 2;
+
+    private static final int HDR_COMPRESSED_TIME_BIT = 0x80;
+    private static final int HDR_DEFINITION_BIT = 0x40;
+    private static final int HDR_DEVELOPER_DATA_BIT = 0x20;
+    private static final int HDR_LOCAL_TYPE_MASK = 0x0F;
+    private static final int HDR_TIME_OFFSET_MASK = 0x1F;
+
+    private static final int BASE_TYPE_NUM_MASK = 0x1F;
+    private static final int BASE_TYPE_ENUM = 0x00;
+    private static final int BASE_TYPE_SINT8 = 0x01;
+    private static final int BASE_TYPE_UINT8 = 0x02;
+    private static final int BASE_TYPE_SINT16 = 0x03;
+    private static final int BASE_TYPE_UINT16 = 0x04;
+    private static final int BASE_TYPE_SINT32 = 0x05;
+    private static final int BASE_TYPE_UINT32 = 0x06;
+    private static final int BASE_TYPE_FLOAT32 = 0x08;
+    private static final int BASE_TYPE_FLOAT64 = 0x09;
+    private static final int BASE_TYPE_UINT8Z = 0x0A;
+    private static final int BASE_TYPE_UINT16Z = 0x0B;
+    private static final int BASE_TYPE_UINT32Z = 0x0C;
+    private static final int BASE_TYPE_SINT64 = 0x0E;
+    private static final int BASE_TYPE_UINT64 = 0x0F;
+    private static final int BASE_TYPE_UINT64Z = 0x10;
+    /**
+     * Size in bytes of a single value of each base type, indexed by base type number.
+     * Strings (0x07) and byte arrays (0x0D) are never delivered, so they are given size 0.
+     */
+    private static final int[] BASE_TYPE_SIZES = {1, 1, 1, 2, 2, 4, 4, 0, 4, 8, 1, 2, 4, 0, 8, 8, 8};
+
+    private final boolean[] defined = new boolean[MAX_LOCAL_MESGS];
+    private final boolean[] bigEndian = new boolean[MAX_LOCAL_MESGS];
+    private final int[] globalMesgNums = new int[MAX_LOCAL_MESGS];
+    private final int[] numFields = new int[MAX_LOCAL_MESGS];
+    private final int[] mesgSizes = new int[MAX_LOCAL_MESGS];
+    private final int[][] fieldNums = new int[MAX_LOCAL_MESGS][];
+    private final int[][] fieldSizes = new int[MAX_LOCAL_MESGS][];
+    private final int[][] baseTypes = new int[MAX_LOCAL_MESGS][];
+    private final boolean[][] wantedFields = new boolean[MAX_LOCAL_MESGS][];
+    private final boolean[] skipped = new boolean[MAX_LOCAL_MESGS];
+    private final boolean[] timestampWanted = new boolean[MAX_LOCAL_MESGS];
+    private final int[] timestampOffsets = new int[MAX_LOCAL_MESGS];
+    private long timestamp;
+    private int lastTimeOffset;
+    private boolean checkCrc = true;
+    private FitProjection projection;
+
+    public boolean isCheckCrc() {
+        return checkCrc;
+    }
+
+    /**
+     * @param checkCrc - When true (the default) each file fails to decode if its CRC is wrong, like the SDK.
+     */
+    public void setCheckCrc(final boolean checkCrc) {
+        this.checkCrc = checkCrc;
+    }
+
+    public FitProjection getProjection() {
+        return projection;
+    }
+
+    /**
+     * @param projection - The messages and fields to deliver, or null to deliver everything.
+     */
+    public void setProjection(final FitProjection projection) {
+        this.projection = projection;
+    }
+
+    /**
+     * The purpose of this method is to read the whole stream into a heap buffer and decode it.
+     * The stream is not closed.
+     *
+     * @param in   - InputStream from a Garmin FIT file.
+     * @param sink - Receives the data messages.
+     * @throws IOException when the stream cannot be read.
+     */
+    public void decode(final InputStream in, final FitMesgSink sink) throws IOException {
+        final StreamBuffer bytes = new StreamBuffer(Math.max(in.available(), 8192));
+        bytes.readFrom(in);
+        decode(bytes.toByteBuffer(), sink);
+    }
+
+    /**
+     * The purpose of this method is to decode every FIT file between the buffer's
+     * position and limit. The buffer's position, limit and byte order are not changed.
+     *
+     * @param source - The FIT file content.
+     * @param sink   - Receives the data messages.
+     * @throws FitRuntimeException when the content is not valid FIT.
+     */
+    public void decode(final ByteBuffer source, final FitMesgSink sink) {
+        final ByteBuffer buf = source.duplicate();
+        int pos = buf.position();
+        final int limit = buf.limit();
+        while (pos < limit) {
+            pos = decodeFile(buf, pos, limit, sink);
+        }
+    }
+
+    private int decodeFile(final ByteBuffer buf, final int start, final int limit, final FitMesgSink sink) {
+        final int hdrSize = buf.get(start) & 0xFF;
+        if (hdrSize < MIN_FILE_HDR_SIZE || start + hdrSize > limit
+                || buf.get(start + 8) != '.' || buf.get(start + 9) != 'F'
+                || buf.get(start + 10) != 'I' || buf.get(start + 11) != 'T') {
+            throw new FitRuntimeException("FIT decode error: File is not FIT format.  Check file header data type.");
+        }
+        final int protocolMajor = (buf.get(start + 1) & 0xFF) >> 4;
+        if (protocolMajor > MAX_PROTOCOL_VERSION_MAJOR) {
+            throw new FitRuntimeException("FIT decode error: Protocol version " + protocolMajor + " not supported.");
+        }
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        final long dataSize = buf.getInt(start + 4) & 0xFFFFFFFFL;
+        final long end = start + hdrSize + dataSize;
+        if (end + FILE_CRC_SIZE > limit) {
+            throw new FitRuntimeException("FIT decode error: Unexpected end of input stream.");
+        }
+        if (checkCrc && crc(buf, start, (int) end + FILE_CRC_SIZE) != 0) {
+            throw new FitRuntimeException("FIT decode error: File CRC failed.");
+        }
+
+        Arrays.fill(defined, false);
+        timestamp = 0;
+        lastTimeOffset = 0;
+        int pos = start + hdrSize;
+        while (pos < end) {
+            final int header = buf.get(pos) & 0xFF;
+            if ((header & HDR_COMPRESSED_TIME_BIT) != 0) {
+                final int timeOffset = header & HDR_TIME_OFFSET_MASK;
+                timestamp += (timeOffset - lastTimeOffset) & HDR_TIME_OFFSET_MASK;
+                lastTimeOffset = timeOffset;
+                pos = readDataMesg(buf, pos, (int) end, (header >> 5) & 0x03, true, sink);
+            } else if ((header & HDR_DEFINITION_BIT) != 0) {
+                pos = readDefinition(buf, pos, (int) end, header);
+            } else {
+                pos = readDataMesg(buf, pos, (int) end, header & HDR_LOCAL_TYPE_MASK, false, sink);
+            }
+        }
+        return (int) end + FILE_CRC_SIZE;
+    }
+
+    private int readDefinition(final ByteBuffer buf, final int start, final int end, final int header) {
+        final int local = header & HDR_LOCAL_TYPE_MASK;
+        int pos = start + 1;
+        checkAvailable(pos, 5, end);
+        final int architecture = buf.get(pos + 1) & 0xFF;
+        if (architecture > 1) {
+            throw new FitRuntimeException("FIT decode error: Endian " + architecture + " not supported.");
+        }
+        final boolean big = architecture == 1;
+        buf.order(big ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        final int mesgNum = buf.getShort(pos + 2) & 0xFFFF;
+        final int count = buf.get(pos + 4) & 0xFF;
+        pos += 5;
+        checkAvailable(pos, count * 3, end);
+        if (fieldNums[local] == null || fieldNums[local].length < count) {
+            final int capacity = Math.max(count, 16);
+            fieldNums[local] = new int[capacity];
+            fieldSizes[local] = new int[capacity];
+            baseTypes[local] = new int[capacity];
+            wantedFields[local] = new boolean[capacity];
+        }
+        final boolean included = projection == null || projection.includesMesg(mesgNum);
+        int timestampOffset = -1;
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            final int fieldNum = buf.get(pos) & 0xFF;
+            final int fieldSize = buf.get(pos + 1) & 0xFF;
+            final int baseType = buf.get(pos + 2) & 0xFF;
+            fieldNums[local][i] = fieldNum;
+            fieldSizes[local][i] = fieldSize;
+            baseTypes[local][i] = baseType;
+            wantedFields[local][i] = included && (projection == null || projection.includesField(mesgNum, fieldNum));
+            if (fieldNum == FIELD_NUM_TIMESTAMP && (baseType & BASE_TYPE_NUM_MASK) == BASE_TYPE_UINT32 && fieldSize == 4) {
+                timestampOffset = size;
+            }
+            size += fieldSize;
+            pos += 3;
+        }
+        if ((header & HDR_DEVELOPER_DATA_BIT) != 0) {
+            checkAvailable(pos, 1, end);
+            final int devCount = buf.get(pos) & 0xFF;
+            pos++;
+            checkAvailable(pos, devCount * 3, end);
+            for (int i = 0; i < devCount; i++) {
+                size += buf.get(pos + 1) & 0xFF;
+                pos += 3;
+            }
+        }
+        defined[local] = true;
+        bigEndian[local] = big;
+        globalMesgNums[local] = mesgNum;
+        numFields[local] = count;
+        mesgSizes[local] = size;
+        skipped[local] = !included;
+        timestampWanted[local] = included && (projection == null || projection.includesField(mesgNum, FIELD_NUM_TIMESTAMP));
+        timestampOffsets[local] = timestampOffset;
+        return pos;
+    }
+
+    private int readDataMesg(final ByteBuffer buf, final int start, final int end, final int local,
+                             final boolean compressedTime, final FitMesgSink sink) {
+        if (!defined[local]) {
+            throw new FitRuntimeException("FIT decode error: Missing message definition for local message number " + local + ".");
+        }
+        int pos = start + 1;
+        checkAvailable(pos, mesgSizes[local], end);
+        buf.order(bigEndian[local] ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        if (skipped[local]) {
+            if (timestampOffsets[local] >= 0) {
+                trackTimestamp(buf.getInt(pos + timestampOffsets[local]) & 0xFFFFFFFFL);
+            }
+            return start + 1 + mesgSizes[local];
+        }
+        final int mesgNum = globalMesgNums[local];
+        final int[] nums = fieldNums[local];
+        final int[] sizes = fieldSizes[local];
+        final int[] types = baseTypes[local];
+        final boolean[] wanted = wantedFields[local];
+        sink.onMesgStart(mesgNum);
+        if (compressedTime && timestampWanted[local]) {
+            sink.onField(mesgNum, FIELD_NUM_TIMESTAMP, timestamp);
+        }
+        for (int i = 0; i < numFields[local]; i++) {
+            if (wanted[i]) {
+                readField(buf, pos, mesgNum, nums[i], sizes[i], types[i] & BASE_TYPE_NUM_MASK, sink);
+            } else if (pos - start - 1 == timestampOffsets[local]) {
+                trackTimestamp(buf.getInt(pos) & 0xFFFFFFFFL);
+            }
+            pos += sizes[i];
+        }
+        sink.onMesgEnd(mesgNum);
+        return start + 1 + mesgSizes[local];
+    }
+
+    private void readField(final ByteBuffer buf, final int pos, final int mesgNum, final int fieldNum,
+                           final int size, final int baseType, final FitMesgSink sink) {
+        if (baseType >= BASE_TYPE_SIZES.length || size != BASE_TYPE_SIZES[baseType]) {
+            return; // Strings, byte arrays, value arrays and unknown types.
+        }
+        final long value;
+        switch (baseType) {
+            case BASE_TYPE_ENUM:
+            case BASE_TYPE_UINT8:
+                value = buf.get(pos) & 0xFF;
+                if (value == 0xFF) {
+                    return;
+                }
+                break;
+            case BASE_TYPE_SINT8:
+                value = buf.get(pos);
+                if (value == 0x7F) {
+                    return;
+                }
+                break;
+            case BASE_TYPE_UINT8Z:
+                value = buf.get(pos) & 0xFF;
+                if (value == 0) {
+                    return;
+                }
+                break;
+            case BASE_TYPE_SINT16:
+                value = buf.getShort(pos);
+                if (value == 0x7FFF) {
+                    return;
+                }
+                break;
+            case BASE_TYPE_UINT16:
+                value = buf.getShort(pos) & 0xFFFF;
+                if (value == 0xFFFF) {
+                    return;
+                }
+                break;
+            case BASE_TYPE_UINT16Z:
+                value = buf.getShort(pos) & 0xFFFF;
+                if (value == 0) {
+                    return;
+                }
+                break;
+            case BASE_TYPE_SINT32:
+                value = buf.getInt(pos);
+                if (value == 0x7FFFFFFF) {
+                    return;
+                }
+                break;
+            case BASE_TYPE_UINT32:
+                value = buf.getInt(pos) & 0xFFFFFFFFL;
+                if (value == 0xFFFFFFFFL) {
+                    return;
+                }
+                break;
+            case BASE_TYPE_UINT32Z:
+                value = buf.getInt(pos) & 0xFFFFFFFFL;
+                if (value == 0) {
+                    return;
+                }
+                break;
+            case BASE_TYPE_SINT64:
+                value = buf.getLong(pos);
+                if (value == Long.MAX_VALUE) {
+                    return;
+                }
+                break;
+            case BASE_TYPE_UINT64:
+                value = buf.getLong(pos);
+                if (value == -1L) {
+                    return;
+                }
+                break;
+            case BASE_TYPE_UINT64Z:
+                value = buf.getLong(pos);
+                if (value == 0) {
+                    return;
+                }
+                break;
+            case BASE_TYPE_FLOAT32:
+                final int floatBits = buf.getInt(pos);
+                if (floatBits != 0xFFFFFFFF) {
+                    sink.onField(mesgNum, fieldNum, (double) Float.intBitsToFloat(floatBits));
+                }
+                return;
+            case BASE_TYPE_FLOAT64:
+                final long doubleBits = buf.getLong(pos);
+                if (doubleBits != -1L) {
+                    sink.onField(mesgNum, fieldNum, Double.longBitsToDouble(doubleBits));
+                }
+                return;
+            default:
+                return;
+        }
+        if (fieldNum == FIELD_NUM_TIMESTAMP && baseType == BASE_TYPE_UINT32) {
+            trackTimestamp(value);
+        }
+        sink.onField(mesgNum, fieldNum, value);
+    }
+
+    private void trackTimestamp(final long value) {
+        if (value != 0xFFFFFFFFL) {
+            timestamp = value;
+            lastTimeOffset = (int) (value & HDR_TIME_OFFSET_MASK);
+        }
+    }
+
+    private static void checkAvailable(final int pos, final int length, final int end) {
+        if (pos + length > end) {
+            throw new FitRuntimeException("FIT decode error: Decoder not in correct state after last data byte in file.  Check message definitions.");
+        }
+    }
+
+    private static int crc(final ByteBuffer buf, final int start, final int end) {
+        int crc = 0;
+        if (buf.hasArray()) {
+            final byte[] array = buf.array();
+            final int offset = buf.arrayOffset();
+            for (int i = start + offset; i < end + offset; i++) {
+                crc = CRC.get16(crc, array[i]);
+            }
+        } else {
+            for (int i = start; i < end; i++) {
+                crc = CRC.get16(crc, buf.get(i));
+            }
+        }
+        return crc;
+    }
+
+    /**
+     * A ByteArrayOutputStream that reads a stream straight into its own array and hands
+     * the array out without copying it, so a decoded stream is held in memory only once.
+     */
+    private static class StreamBuffer extends ByteArrayOutputStream {
+
+        StreamBuffer(final int capacity) {
+            super(capacity);
+        }
+
+        void readFrom(final InputStream in) throws IOException {
+            while (true) {
+                if (count == buf.length) {
+                    // Sized from available() the array is usually full at the end of the
+                    // stream, so only grow it once there is another byte to hold.
+                    final int next = in.read();
+                    if (next == -1) {
+                        return;
+                    }
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                    buf[count++] = (byte) next;
+                }
+                final int read = in.read(buf, count, buf.length - count);
+                if (read == -1) {
+                    return;
+                }
+                count += read;
+            }
+        }
+
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.exploringspatial.fit;
+
+/**
+ * The purpose of this interface is to receive decoded FIT data messages from the
+ * {@link FitDecoder} as primitive values, without the SDK building a Mesg object
+ * with boxed fields for every message.
+ *
+ * Only single valued numeric fields are delivered. Fields holding the invalid value
+ * for their base type are not delivered, which mirrors the SDK getters returning null.
+ *
+ * @author Steve Mitchell
+ */
+public interface FitMesgSink {
+
+    /**
+     * Called before any field of a data message is delivered.
+     *
+     * @param mesgNum - The global message number (see com.garmin.fit.MesgNum).
+     */
+    void onMesgStart(int mesgNum);
+
+    /**
+     * Called for each valid integer field (enum, sint/uint of any size, date_time).
+     * Unsigned values are widened without sign extension.
+     *
+     * @param mesgNum  - The global message number.
+     * @param fieldNum - The field definition number within the message.
+     * @param value    - The raw value before scale and offset are applied.
+     */
+    void onField(int mesgNum, int fieldNum, long value);
+
+    /**
+     * Called for each valid float32 or float64 field.
+     *
+     * @param mesgNum  - The global message number.
+     * @param fieldNum - The field definition number within the message.
+     * @param value    - The raw value before scale and offset are applied.
+     */
+    void onField(int mesgNum, int fieldNum, double value);
+
+    /**
+     * Called after the last field of a data message has been delivered.
+     *
+     * @param mesgNum - The global message number.
+     */
+    void onMesgEnd(int mesgNum);
+}
@@ -0,0 +1,47 @@
+package com.exploringspatial.fit;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The purpose of this class is to declare which data messages and fields the
+ * {@link FitDecoder} should deliver. Messages that are not included are stepped over
+ * using the byte length from their definition, and fields that are not included are
+ * never read.
+ *
+ * It is only consulted when a definition message is read, never per data message.
+ *
+ * @author Steve Mitchell
+ */
+public class FitProjection {
+    private final Map<Integer, BitSet> mesgFields = new HashMap<Integer, BitSet>();
+
+    /**
+     * The purpose of this method is to include a message and some or all of its fields.
+     *
+     * @param mesgNum   - The global message number (see com.garmin.fit.MesgNum).
+     * @param fieldNums - The field numbers to deliver; none means every field.
+     * @return this projection, so calls can be chained.
+     */
+    public FitProjection include(final int mesgNum, final int... fieldNums) {
+        BitSet fields = mesgFields.get(mesgNum);
+        if (fields == null) {
+            fields = new BitSet();
+            mesgFields.put(mesgNum, fields);
+        }
+        for (final int fieldNum : fieldNums) {
+            fields.set(fieldNum);
+        }
+        return this;
+    }
+
+    public boolean includesMesg(final int mesgNum) {
+        return mesgFields.containsKey(mesgNum);
+    }
+
+    public boolean includesField(final int mesgNum, final int fieldNum) {
+        final BitSet fields = mesgFields.get(mesgNum);
+        return fields != null && (fields.isEmpty() || fields.get(fieldNum));
+    }
+}
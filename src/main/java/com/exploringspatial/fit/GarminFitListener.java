@@ -1,31 +1,78 @@
 package com.exploringspatial.fit;
 
 import com.exploringspatial.domain.FitActivity;
+import com.exploringspatial.domain.FitTrack;
+import com.exploringspatial.simplify.RadialDistanceFilter;
+import com.exploringspatial.simplify.StreamingDouglasPeucker;
 import com.garmin.fit.*;
 import java.util.TimeZone;
-import com.vividsolutions.jts.geom.Coordinate;
 import org.apache.commons.lang3.time.DateFormatUtils;
 
 /**
  * The purpose of this class is pull just enough data out of a Garmin FIT file
  * to generate a GeoJSON payload. It currently only supports a FIT file with a
  * single session (e.g. not multi-sport).
+ *
+ * It listens to the SDK MesgBroadcaster and also acts as the {@link FitMesgSink}
+ * for the native {@link FitDecoder}; both paths fill the FitActivity identically.
  * @author Steve Mitchell
  */
-public class GarminFitListener implements ActivityMesgListener, RecordMesgListener, SessionMesgListener {
+public class GarminFitListener implements ActivityMesgListener, RecordMesgListener, SessionMesgListener, FitMesgSink {
+    private static final int RECORD_POSITION_LAT = 0;
+    private static final int RECORD_POSITION_LONG = 1;
+    private static final int SESSION_START_TIME = 2;
+    private static final int SESSION_SPORT = 5;
+    private static final int SESSION_TOTAL_TIMER_TIME = 8;
+    private static final int SESSION_TOTAL_DISTANCE = 9;
+    private static final double SESSION_TOTAL_TIMER_TIME_SCALE = 1000D;
+    private static final double SESSION_TOTAL_DISTANCE_SCALE = 100D;
+
     private final FitActivity fitActivity;
+    private final RadialDistanceFilter filter;
+    private final StreamingDouglasPeucker simplifier;
+    private boolean hasLat;
+    private boolean hasLon;
+    private int positionLat;
+    private int positionLon;
+    private boolean hasRejected;
+    private int rejectedLat;
+    private int rejectedLon;
 
     public GarminFitListener(final FitActivity fitActivity) {
+        this(fitActivity, null, null);
+    }
+
+    /**
+     * @param fitActivity - Receives the decoded values.
+     * @param filter      - When not null, positions it rejects are dropped as they are decoded.
+     *                    The last position is always kept. Call finish() after decoding.
+     * @param simplifier  - When not null, positions are fed to it instead of the activity's track,
+     *                    so only the vertices it keeps are stored. Call finish() after decoding.
+     */
+    public GarminFitListener(final FitActivity fitActivity, final RadialDistanceFilter filter,
+                             final StreamingDouglasPeucker simplifier) {
         super();
         this.fitActivity = fitActivity;
+        this.filter = filter;
+        this.simplifier = simplifier;
+    }
+
+    /**
+     * The purpose of this method is to declare the only messages and fields this
+     * listener reads, so the native decoder can step over everything else.
+     *
+     * @return a new projection of the record position and session summary fields.
+     */
+    public static FitProjection createProjection() {
+        return new FitProjection()
+                .include(MesgNum.RECORD, RECORD_POSITION_LAT, RECORD_POSITION_LONG)
+                .include(MesgNum.SESSION, SESSION_START_TIME, SESSION_SPORT, SESSION_TOTAL_TIMER_TIME, SESSION_TOTAL_DISTANCE);
     }
 
     @Override
     public void onMesg(final RecordMesg recordMesg) {
         if (recordMesg.getPositionLat() != null && recordMesg.getPositionLong() != null) {
-            final double lat = toDegrees(recordMesg.getPositionLat());
-            final double lon = toDegrees(recordMesg.getPositionLong());
-            fitActivity.addCoordinate(new Coordinate(lon, lat));
+            addPosition(recordMesg.getPositionLong(), recordMesg.getPositionLat());
         }
     }
 
@@ -61,12 +108,98 @@ public class GarminFitListener implements ActivityMesgListener, RecordMesgListen
         }
     }
 
-    public FitActivity getFitActivity() {
-        return fitActivity;
+    @Override
+    public void onMesgStart(final int mesgNum) {
+        if (mesgNum == MesgNum.RECORD) {
+            hasLat = false;
+            hasLon = false;
+        }
+    }
+
+    @Override
+    public void onField(final int mesgNum, final int fieldNum, final long value) {
+        if (mesgNum == MesgNum.RECORD) {
+            if (fieldNum == RECORD_POSITION_LAT) {
+                positionLat = (int) value;
+                hasLat = true;
+            } else if (fieldNum == RECORD_POSITION_LONG) {
+                positionLon = (int) value;
+                hasLon = true;
+            }
+        } else if (mesgNum == MesgNum.SESSION) {
+            switch (fieldNum) {
+                case SESSION_TOTAL_DISTANCE:
+                    // The SDK hands scaled values back as Float, so round the same way.
+                    fitActivity.setTotalMeters((double) (float) (value / SESSION_TOTAL_DISTANCE_SCALE));
+                    break;
+                case SESSION_START_TIME:
+                    final String formatedDate = DateFormatUtils.format(value * 1000 + DateTime.OFFSET, "yyyy-MM-dd'T'HH:mm'Z'", TimeZone.getTimeZone("UTC"));
+                    fitActivity.setStartTime(formatedDate);
+                    break;
+                case SESSION_TOTAL_TIMER_TIME:
+                    fitActivity.setTotalSeconds((double) (float) (value / SESSION_TOTAL_TIMER_TIME_SCALE));
+                    break;
+                case SESSION_SPORT:
+                    final Sport sport = Sport.getByValue((short) value);
+                    if (sport != null) {
+                        fitActivity.setSport(sport.name());
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
     }
 
-    private double toDegrees(final Integer s) {
-        return s * (180D/Math.pow(2,31)) ;
+    @Override
+    public void onField(final int mesgNum, final int fieldNum, final double value) {
+        // None of the fields used for the GeoJSON are floating point.
+    }
+
+    @Override
+    public void onMesgEnd(final int mesgNum) {
+        if (mesgNum == MesgNum.RECORD && hasLat && hasLon) {
+            addPosition(positionLon, positionLat);
+        }
+    }
+
+    /**
+     * The purpose of this method is to store the last position if the filter rejected it
+     * and write the vertices a streaming simplifier is still holding. It does nothing when
+     * the listener stores every position.
+     */
+    public void finish() {
+        if (hasRejected) {
+            hasRejected = false;
+            storePosition(rejectedLon, rejectedLat);
+        }
+        if (simplifier != null) {
+            simplifier.finish();
+        }
+    }
+
+    private void addPosition(final int longitude, final int latitude) {
+        if (filter != null) {
+            hasRejected = !filter.accept(longitude * FitTrack.SEMICIRCLES_TO_DEGREES, latitude * FitTrack.SEMICIRCLES_TO_DEGREES);
+            if (hasRejected) {
+                rejectedLon = longitude;
+                rejectedLat = latitude;
+                return;
+            }
+        }
+        storePosition(longitude, latitude);
+    }
+
+    private void storePosition(final int longitude, final int latitude) {
+        if (simplifier == null) {
+            fitActivity.getTrack().addSemicircles(longitude, latitude);
+        } else {
+            simplifier.add(longitude * FitTrack.SEMICIRCLES_TO_DEGREES, latitude * FitTrack.SEMICIRCLES_TO_DEGREES);
+        }
+    }
+
+    public FitActivity getFitActivity() {
+        return fitActivity;
     }
 
 }
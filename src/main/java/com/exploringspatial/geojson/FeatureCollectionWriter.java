@@ -0,0 +1,130 @@
+package com.exploringspatial.geojson;
+
+import com.exploringspatial.domain.FitActivity;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Geometry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The purpose of this class is to write many activities into one GeoJSON FeatureCollection
+ * without holding them in memory. The collection is opened when the writer is created,
+ * each feature is written to the stream as soon as it is added, with a comma before all
+ * but the first, and close ends the collection and closes the stream.
+ *
+ * Each feature is assembled in a GeoJsonWriter buffer that is reused for the next one, so
+ * memory is bounded by the largest feature, not by the collection. Features have the same
+ * text as the single feature files, except that the id is the activity id, or the
+ * feature's position in the collection when the activity has none.
+ *
+ * Safe to call from several threads at once; features are written in the order they are
+ * added.
+ *
+ * @author Steve Mitchell
+ */
+public class FeatureCollectionWriter implements Closeable {
+    private static final byte[] HEADER = "{\"type\":\"FeatureCollection\",\"features\":[".getBytes();
+    private static final byte[] FOOTER = "]}".getBytes();
+    private final OutputStream out;
+    private final GeoJsonWriter writer;
+    private int count;
+    private boolean closed;
+
+    /**
+     * @param out - Receives the collection; it is closed by close().
+     * @throws IOException when the opening of the collection cannot be written.
+     */
+    public FeatureCollectionWriter(final OutputStream out) throws IOException {
+        this(out, GeoJsonWriter.DEFAULT_DECIMALS);
+    }
+
+    /**
+     * @param out      - Receives the collection; it is closed by close().
+     * @param decimals - Decimal places kept in each ordinate.
+     * @throws IOException when the opening of the collection cannot be written.
+     */
+    public FeatureCollectionWriter(final OutputStream out, final int decimals) throws IOException {
+        this.out = out;
+        this.writer = new GeoJsonWriter(decimals);
+        out.write(HEADER);
+    }
+
+    /**
+     * @param fitActivity - Source of the feature properties.
+     * @param geometry    - The simplified track, a LineString.
+     * @throws IOException when the feature cannot be written.
+     */
+    public synchronized void writeFeature(final FitActivity fitActivity, final Geometry geometry) throws IOException {
+        checkOpen();
+        writer.reset();
+        writer.writeFeature(fitActivity, geometry, nextId(fitActivity));
+        flushFeature();
+    }
+
+    /**
+     * The purpose of this method is to append one activity to the collection.
+     *
+     * @param fitActivity - Source of the feature properties.
+     * @param sequence    - The simplified track.
+     * @throws IOException when the feature cannot be written.
+     */
+    public synchronized void writeFeature(final FitActivity fitActivity, final CoordinateSequence sequence) throws IOException {
+        checkOpen();
+        writer.reset();
+        writer.writeFeature(fitActivity, sequence, nextId(fitActivity));
+        flushFeature();
+    }
+
+    /**
+     * @param polylinePrecision - Decimals of the encoded polyline property, 5 or 6, or 0 to leave it out.
+     */
+    public synchronized void setPolylinePrecision(final int polylinePrecision) {
+        writer.setPolylinePrecision(polylinePrecision);
+    }
+
+    /**
+     * @return the number of features written so far.
+     */
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * The purpose of this method is to end the collection and close the stream. Calling
+     * it again does nothing.
+     *
+     * @throws IOException when the end of the collection cannot be written.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            out.write(FOOTER);
+        } finally {
+            out.close();
+        }
+    }
+
+    private String nextId(final FitActivity fitActivity) {
+        return fitActivity.getActivityId() != null ? fitActivity.getActivityId().toString() : String.valueOf(count);
+    }
+
+    private void flushFeature() throws IOException {
+        if (count > 0) {
+            out.write(',');
+        }
+        writer.writeTo(out);
+        count++;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The feature collection has been closed");
+        }
+    }
+}
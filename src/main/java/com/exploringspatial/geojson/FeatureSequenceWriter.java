@@ -0,0 +1,140 @@
+package com.exploringspatial.geojson;
+
+import com.exploringspatial.domain.FitActivity;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Geometry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The purpose of this class is to write activities as a GeoJSON text sequence (RFC 8142),
+ * one compact feature per line, so loaders can split a file at any line break and read
+ * the pieces in parallel without parsing the whole document. Each feature is preceded by
+ * the record separator 0x1E and followed by a line feed; without the record separator
+ * the output is plain newline delimited GeoJSON, which line based readers such as Spark's
+ * expect.
+ *
+ * A feature never holds a raw line break: strings are escaped and the text is compact.
+ * Features have the same text as the single feature files, except that the id is the
+ * activity id, or the feature's position in the sequence when the activity has none.
+ *
+ * Safe to call from several threads at once; features are written in the order they are
+ * added.
+ *
+ * @author Steve Mitchell
+ */
+public class FeatureSequenceWriter implements Closeable {
+    public static final byte RECORD_SEPARATOR = 0x1E;
+    private final OutputStream out;
+    private final GeoJsonWriter writer;
+    private final boolean recordSeparator;
+    private int count;
+    private long size;
+    private boolean closed;
+
+    /**
+     * @param out - Receives the RFC 8142 sequence; it is closed by close().
+     */
+    public FeatureSequenceWriter(final OutputStream out) {
+        this(out, GeoJsonWriter.DEFAULT_DECIMALS, true);
+    }
+
+    /**
+     * @param out             - Receives the sequence; it is closed by close().
+     * @param decimals        - Decimal places kept in each ordinate.
+     * @param recordSeparator - True to start each feature with 0x1E as RFC 8142 requires,
+     *                        false for newline delimited GeoJSON.
+     */
+    public FeatureSequenceWriter(final OutputStream out, final int decimals, final boolean recordSeparator) {
+        this.out = out;
+        this.writer = new GeoJsonWriter(decimals);
+        this.recordSeparator = recordSeparator;
+    }
+
+    public boolean isRecordSeparator() {
+        return recordSeparator;
+    }
+
+    /**
+     * @param fitActivity - Source of the feature properties.
+     * @param geometry    - The simplified track, a LineString.
+     * @throws IOException when the feature cannot be written.
+     */
+    public synchronized void writeFeature(final FitActivity fitActivity, final Geometry geometry) throws IOException {
+        checkOpen();
+        writer.reset();
+        writer.writeFeature(fitActivity, geometry, nextId(fitActivity));
+        flushFeature();
+    }
+
+    /**
+     * The purpose of this method is to append one activity as a line of the sequence.
+     *
+     * @param fitActivity - Source of the feature properties.
+     * @param sequence    - The simplified track.
+     * @throws IOException when the feature cannot be written.
+     */
+    public synchronized void writeFeature(final FitActivity fitActivity, final CoordinateSequence sequence) throws IOException {
+        checkOpen();
+        writer.reset();
+        writer.writeFeature(fitActivity, sequence, nextId(fitActivity));
+        flushFeature();
+    }
+
+    /**
+     * @param polylinePrecision - Decimals of the encoded polyline property, 5 or 6, or 0 to leave it out.
+     */
+    public synchronized void setPolylinePrecision(final int polylinePrecision) {
+        writer.setPolylinePrecision(polylinePrecision);
+    }
+
+    /**
+     * @return the number of features written so far.
+     */
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * @return the number of bytes written so far, separators and line feeds included.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * The purpose of this method is to close the stream. Calling it again does nothing.
+     *
+     * @throws IOException when the stream cannot be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            out.close();
+        }
+    }
+
+    private String nextId(final FitActivity fitActivity) {
+        return fitActivity.getActivityId() != null ? fitActivity.getActivityId().toString() : String.valueOf(count);
+    }
+
+    private void flushFeature() throws IOException {
+        if (recordSeparator) {
+            out.write(RECORD_SEPARATOR);
+            size++;
+        }
+        writer.writeTo(out);
+        out.write('\n');
+        size += writer.size() + 1;
+        count++;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The feature sequence has been closed");
+        }
+    }
+}
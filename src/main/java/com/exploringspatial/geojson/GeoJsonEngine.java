@@ -0,0 +1,19 @@
+package com.exploringspatial.geojson;
+
+/**
+ * The GeoJsonEngine enum selects how GarminFitService writes GeoJSON. Both engines
+ * write the same bytes.
+ *
+ * @author Steve Mitchell
+ */
+public enum GeoJsonEngine {
+    /**
+     * GeoTools GeometryJSON and FeatureJSON, through a SimpleFeature built for each activity.
+     */
+    GEOTOOLS,
+    /**
+     * GeoJsonWriter, straight from the activity and its coordinate sequence into a reused buffer;
+     * the default.
+     */
+    STREAMING
+}
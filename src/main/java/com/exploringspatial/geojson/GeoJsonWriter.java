@@ -0,0 +1,472 @@
+package com.exploringspatial.geojson;
+
+import com.exploringspatial.domain.FitActivity;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.impl.CoordinateArraySequence;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * The purpose of this class is to write an activity as GeoJSON without building a
+ * SimpleFeatureType, a SimpleFeature or a JSON object tree. Coordinates are read straight
+ * from the track's CoordinateSequence and the text is assembled in a byte buffer that is
+ * kept between activities, then copied to the output stream in one write.
+ *
+ * The output is byte for byte what GeoTools GeometryJSON and FeatureJSON write for the
+ * same line and activity, which is what the feature.json and linestring.json fixtures
+ * hold: ordinates rounded to 4 decimals by default, properties in schema order with null
+ * values left out, no name property, strings escaped the way json-simple escapes them,
+ * and the feature id given by the caller.
+ *
+ * Ordinates are rounded to a fixed number of decimals and their digits written straight
+ * into the buffer, with trailing zeros trimmed and ".0" for whole numbers, instead of
+ * going through Double.toString. That gives the same text wherever Double.toString
+ * writes a plain decimal. Where it switches to exponent form, for rounded ordinates
+ * closer to zero than 0.001 and for 10^7 or more, such as the epoch millisecond z of TCX
+ * tracks, and for ordinates too large to scale exactly, the rounded value is written
+ * with Double.toString, as GeoTools writes it.
+ *
+ * With a polyline precision set, features also get a "polyline" property after the
+ * bounds, holding the track in Google's encoded polyline format (see PolylineEncoder).
+ *
+ * An instance is not thread safe; give each thread its own.
+ *
+ * @author Steve Mitchell
+ */
+public class GeoJsonWriter {
+    public static final int DEFAULT_DECIMALS = 4;
+    /**
+     * Most decimals an ordinate can keep. Ordinates whose scaled value would not be an
+     * exact long, e.g. 180 at 15 decimals or a timestamp at any, fall back to Double.toString.
+     */
+    public static final int MAX_DECIMALS = 15;
+    /**
+     * Double.toString switches to exponent form from here on.
+     */
+    private static final double PLAIN_LIMIT = 1e7;
+    /**
+     * Largest scaled ordinate written digit by digit; below it the decimal has at most 15
+     * significant digits, which Double.toString gives back unchanged.
+     */
+    private static final double SCALED_LIMIT = 1e15;
+    private static final int DEFAULT_CAPACITY = 64 * 1024;
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+    private int decimals;
+    private long power;
+    private double scale;
+    private byte[] buffer = new byte[DEFAULT_CAPACITY];
+    private int size;
+    private boolean firstProperty;
+    private PolylineEncoder polylineEncoder;
+
+    public GeoJsonWriter() {
+        this(DEFAULT_DECIMALS);
+    }
+
+    /**
+     * @param decimals - Decimal places kept in each ordinate.
+     */
+    public GeoJsonWriter(final int decimals) {
+        setDecimals(decimals);
+    }
+
+    public int getDecimals() {
+        return decimals;
+    }
+
+    /**
+     * @param decimals - Decimal places kept in each ordinate, from 0 to MAX_DECIMALS.
+     */
+    public void setDecimals(final int decimals) {
+        if (decimals < 0 || decimals > MAX_DECIMALS) {
+            throw new IllegalArgumentException("Decimals must be from 0 to " + MAX_DECIMALS + ", not " + decimals);
+        }
+        this.decimals = decimals;
+        long value = 1;
+        for (int i = 0; i < decimals; i++) {
+            value *= 10;
+        }
+        this.power = value;
+        this.scale = value;
+    }
+
+    /**
+     * @return the decimals of the polyline property, or 0 when features have none.
+     */
+    public int getPolylinePrecision() {
+        return polylineEncoder == null ? 0 : polylineEncoder.getPrecision();
+    }
+
+    /**
+     * @param polylinePrecision - Decimals of the encoded polyline property, 5 or 6, or 0 to leave it out.
+     * @return the precision.
+     * @throws IllegalArgumentException for any other precision.
+     */
+    public static int checkPolylinePrecision(final int polylinePrecision) {
+        if (polylinePrecision != 0 && polylinePrecision != PolylineEncoder.DEFAULT_PRECISION
+                && polylinePrecision != PolylineEncoder.MAX_PRECISION) {
+            throw new IllegalArgumentException("Polyline precision must be 5, 6 or 0, not " + polylinePrecision);
+        }
+        return polylinePrecision;
+    }
+
+    /**
+     * @param polylinePrecision - Decimals of the encoded polyline property, 5 or 6, or 0 to leave it out.
+     */
+    public void setPolylinePrecision(final int polylinePrecision) {
+        checkPolylinePrecision(polylinePrecision);
+        if (polylinePrecision == 0) {
+            polylineEncoder = null;
+        } else if (polylineEncoder == null || polylineEncoder.getPrecision() != polylinePrecision) {
+            polylineEncoder = new PolylineEncoder(polylinePrecision);
+        }
+    }
+
+    /**
+     * The purpose of this method is to start a new document in the same buffer.
+     */
+    public void reset() {
+        size = 0;
+    }
+
+    /**
+     * @param geometry - A LineString, e.g. from GarminFitService.simplifyLineString.
+     */
+    public void writeLineString(final Geometry geometry) {
+        writeLineString(toSequence(geometry));
+    }
+
+    /**
+     * The purpose of this method is to append a GeoJSON LineString.
+     *
+     * @param sequence - The vertices; z is written when it is a number, as GeoTools does.
+     */
+    public void writeLineString(final CoordinateSequence sequence) {
+        appendAscii("{\"type\":\"LineString\",\"coordinates\":[");
+        final int n = sequence.size();
+        final boolean hasZ = sequence.getDimension() > 2;
+        for (int i = 0; i < n; i++) {
+            if (i > 0) {
+                append(',');
+            }
+            append('[');
+            appendOrdinate(sequence.getX(i));
+            append(',');
+            appendOrdinate(sequence.getY(i));
+            if (hasZ) {
+                final double z = sequence.getOrdinate(i, CoordinateSequence.Z);
+                if (!Double.isNaN(z)) {
+                    append(',');
+                    appendOrdinate(z);
+                }
+            }
+            append(']');
+        }
+        appendAscii("]}");
+    }
+
+    /**
+     * @param fitActivity - Source of the feature properties.
+     * @param geometry    - The simplified track, a LineString.
+     * @param id          - The feature id.
+     */
+    public void writeFeature(final FitActivity fitActivity, final Geometry geometry, final String id) {
+        writeFeature(fitActivity, toSequence(geometry), id);
+    }
+
+    /**
+     * The purpose of this method is to append a GeoJSON Feature with the activity's
+     * properties and the bounds of its simplified track.
+     *
+     * @param fitActivity - Source of the feature properties.
+     * @param sequence    - The simplified track.
+     * @param id          - The feature id.
+     */
+    public void writeFeature(final FitActivity fitActivity, final CoordinateSequence sequence, final String id) {
+        appendAscii("{\"type\":\"Feature\",\"geometry\":");
+        writeLineString(sequence);
+        appendAscii(",\"properties\":{");
+        firstProperty = true;
+        if (fitActivity.getActivityId() != null) {
+            appendName("activityId");
+            appendAscii(fitActivity.getActivityId().toString());
+        }
+        appendProperty("sport", fitActivity.getSport());
+        appendProperty("startTime", fitActivity.getStartTime());
+        appendProperty("totalMeters", fitActivity.getTotalMeters());
+        appendProperty("totalSeconds", fitActivity.getTotalSeconds());
+        double minLat = 0;
+        double minLon = 0;
+        double maxLat = 0;
+        double maxLon = 0;
+        final int n = sequence.size();
+        if (n > 0) {
+            minLon = maxLon = sequence.getX(0);
+            minLat = maxLat = sequence.getY(0);
+            for (int i = 1; i < n; i++) {
+                final double x = sequence.getX(i);
+                final double y = sequence.getY(i);
+                minLon = Math.min(minLon, x);
+                maxLon = Math.max(maxLon, x);
+                minLat = Math.min(minLat, y);
+                maxLat = Math.max(maxLat, y);
+            }
+        }
+        appendProperty("minLat", minLat);
+        appendProperty("minLon", minLon);
+        appendProperty("maxLat", maxLat);
+        appendProperty("maxLon", maxLon);
+        if (polylineEncoder != null) {
+            appendName("polyline");
+            appendPolyline(sequence);
+        }
+        appendAscii("},\"id\":");
+        appendString(id);
+        append('}');
+    }
+
+    /**
+     * The purpose of this method is to copy the document to a stream. The stream is not closed.
+     *
+     * @param out - Receives the bytes written since the last reset.
+     * @throws IOException when the stream cannot be written.
+     */
+    public void writeTo(final OutputStream out) throws IOException {
+        out.write(buffer, 0, size);
+    }
+
+    /**
+     * @return the number of bytes written since the last reset.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return a copy of the bytes written since the last reset.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    private static CoordinateSequence toSequence(final Geometry geometry) {
+        if (geometry instanceof LineString) {
+            return ((LineString) geometry).getCoordinateSequence();
+        }
+        return new CoordinateArraySequence(geometry.getCoordinates());
+    }
+
+    private void appendName(final String name) {
+        if (!firstProperty) {
+            append(',');
+        }
+        firstProperty = false;
+        append('"');
+        appendAscii(name);
+        appendAscii("\":");
+    }
+
+    private void appendProperty(final String name, final String value) {
+        if (value != null) {
+            appendName(name);
+            appendString(value);
+        }
+    }
+
+    private void appendProperty(final String name, final Double value) {
+        if (value != null) {
+            appendProperty(name, value.doubleValue());
+        }
+    }
+
+    private void appendProperty(final String name, final double value) {
+        appendName(name);
+        // JSON has no NaN or Infinity; json-simple writes null for them too.
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            appendAscii("null");
+        } else {
+            appendAscii(Double.toString(value));
+        }
+    }
+
+    /**
+     * The purpose of this method is to write an ordinate rounded the way GeoTools rounds
+     * it, Math.round(value * 10^decimals), without creating a String.
+     */
+    private void appendOrdinate(final double value) {
+        final double product = value * scale;
+        if (!(Math.abs(value) < PLAIN_LIMIT && Math.abs(product) < SCALED_LIMIT)) {
+            // Past Long.MAX_VALUE Math.round clamps, so write the value unrounded; at that
+            // magnitude a double has no digits left below 10^-decimals anyway.
+            appendAscii(Double.toString(Math.abs(product) < Long.MAX_VALUE ? Math.round(product) / scale : value));
+            return;
+        }
+        long scaled = Math.round(product);
+        if (scaled != 0 && Math.abs(scaled) < power / 1000) {
+            // Below 0.001 Double.toString switches to exponent form, e.g. 1.0E-4.
+            appendAscii(Double.toString(scaled / scale));
+            return;
+        }
+        if (scaled < 0) {
+            append('-');
+            scaled = -scaled;
+        }
+        appendDigits(scaled / power);
+        append('.');
+        long fraction = scaled % power;
+        if (fraction == 0) {
+            append('0');
+            return;
+        }
+        int digits = decimals;
+        while (fraction % 10 == 0) {
+            fraction /= 10;
+            digits--;
+        }
+        // The fraction keeps its leading zeros: 0.0042 is 42 in 4 digits.
+        ensureCapacity(size + digits);
+        for (int i = size + digits - 1; i >= size; i--) {
+            buffer[i] = (byte) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        size += digits;
+    }
+
+    private void appendDigits(final long value) {
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        ensureCapacity(size + digits);
+        long rest = value;
+        for (int i = size + digits - 1; i >= size; i--) {
+            buffer[i] = (byte) ('0' + rest % 10);
+            rest /= 10;
+        }
+        size += digits;
+    }
+
+    /**
+     * The purpose of this method is to append the encoded polyline as a quoted string,
+     * straight from the encoder's buffer. Its characters are printable ASCII, and only
+     * the backslash needs escaping.
+     */
+    private void appendPolyline(final CoordinateSequence sequence) {
+        final int length = polylineEncoder.encode(sequence);
+        final byte[] encoded = polylineEncoder.getBuffer();
+        append('"');
+        ensureCapacity(size + length);
+        for (int i = 0; i < length; i++) {
+            if (encoded[i] == '\\') {
+                append('\\');
+            }
+            append(encoded[i]);
+        }
+        append('"');
+    }
+
+    /**
+     * The purpose of this method is to append a quoted string escaped like json-simple's
+     * JSONValue.escape, which is what GeoTools writes with, encoded as UTF-8.
+     */
+    private void appendString(final String value) {
+        append('"');
+        final int length = value.length();
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    appendAscii("\\\"");
+                    break;
+                case '\\':
+                    appendAscii("\\\\");
+                    break;
+                case '\b':
+                    appendAscii("\\b");
+                    break;
+                case '\f':
+                    appendAscii("\\f");
+                    break;
+                case '\n':
+                    appendAscii("\\n");
+                    break;
+                case '\r':
+                    appendAscii("\\r");
+                    break;
+                case '\t':
+                    appendAscii("\\t");
+                    break;
+                case '/':
+                    appendAscii("\\/");
+                    break;
+                default:
+                    if (c <= '\u001F' || (c >= '\u007F' && c <= '\u009F') || (c >= '\u2000' && c <= '\u20FF')) {
+                        appendAscii("\\u");
+                        append(HEX[(c >> 12) & 0xF]);
+                        append(HEX[(c >> 8) & 0xF]);
+                        append(HEX[(c >> 4) & 0xF]);
+                        append(HEX[c & 0xF]);
+                    } else {
+                        appendChar(c, i + 1 < length ? value.charAt(i + 1) : 0);
+                        if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                            i++;
+                        }
+                    }
+                    break;
+            }
+        }
+        append('"');
+    }
+
+    /**
+     * The purpose of this method is to encode one character, or a surrogate pair, as UTF-8.
+     */
+    private void appendChar(final char c, final char next) {
+        if (c < 0x80) {
+            append((byte) c);
+        } else if (c < 0x800) {
+            append((byte) (0xC0 | (c >> 6)));
+            append((byte) (0x80 | (c & 0x3F)));
+        } else if (Character.isHighSurrogate(c) && Character.isLowSurrogate(next)) {
+            final int codePoint = Character.toCodePoint(c, next);
+            append((byte) (0xF0 | (codePoint >> 18)));
+            append((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+            append((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+            append((byte) (0x80 | (codePoint & 0x3F)));
+        } else if (Character.isSurrogate(c)) {
+            // An unpaired surrogate; String.getBytes writes '?' for it too.
+            append((byte) '?');
+        } else {
+            append((byte) (0xE0 | (c >> 12)));
+            append((byte) (0x80 | ((c >> 6) & 0x3F)));
+            append((byte) (0x80 | (c & 0x3F)));
+        }
+    }
+
+    private void appendAscii(final String value) {
+        final int length = value.length();
+        ensureCapacity(size + length);
+        for (int i = 0; i < length; i++) {
+            buffer[size++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void append(final char c) {
+        append((byte) c);
+    }
+
+    private void append(final byte b) {
+        ensureCapacity(size + 1);
+        buffer[size++] = b;
+    }
+
+    private void ensureCapacity(final int minCapacity) {
+        if (minCapacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(minCapacity, buffer.length * 2));
+        }
+    }
+}
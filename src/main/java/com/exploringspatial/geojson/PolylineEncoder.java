@@ -0,0 +1,184 @@
+package com.exploringspatial.geojson;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.impl.CoordinateArraySequence;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The purpose of this class is to write a track in Google's encoded polyline format, a
+ * few characters per vertex instead of two decimal numbers, for route thumbnails. Each
+ * latitude and longitude is rounded to the precision, 5 decimals as Google Maps expects
+ * or 6 as OSRM and Valhalla use, and written as the zigzag encoded difference from the
+ * previous vertex in 5 bit groups, each offset by 63 into printable ASCII.
+ *
+ * The characters are written into a byte buffer that is kept between tracks, so encoding
+ * a batch allocates nothing once the buffer has grown to the longest track. An instance
+ * is therefore not thread safe; give each thread its own.
+ *
+ * @author Steve Mitchell
+ */
+public class PolylineEncoder {
+    public static final int DEFAULT_PRECISION = 5;
+    /**
+     * Most decimals a polyline can keep. Decoders sum the differences in an int, and a
+     * longitude difference of up to 360 degrees fits in one at 10^6 (3.6e8) but not at
+     * 10^7 (3.6e9).
+     */
+    public static final int MAX_PRECISION = 6;
+    private static final int DEFAULT_CAPACITY = 4 * 1024;
+    private final int precision;
+    private final double scale;
+    private byte[] buffer = new byte[DEFAULT_CAPACITY];
+    private int size;
+
+    public PolylineEncoder() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * @param precision - Decimals kept in each ordinate, from 0 to MAX_PRECISION; 5 or 6 in practice.
+     */
+    public PolylineEncoder(final int precision) {
+        if (precision < 0 || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Polyline precision must be from 0 to " + MAX_PRECISION + ", not " + precision);
+        }
+        this.precision = precision;
+        this.scale = Math.pow(10, precision);
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * @param geometry - A LineString, e.g. from GarminFitService.simplifyLineString.
+     * @return the number of characters written; they are in getBuffer().
+     */
+    public int encode(final Geometry geometry) {
+        if (geometry instanceof LineString) {
+            return encode(((LineString) geometry).getCoordinateSequence());
+        }
+        return encode(new CoordinateArraySequence(geometry.getCoordinates()));
+    }
+
+    /**
+     * The purpose of this method is to encode a track, replacing the previous one in the buffer.
+     *
+     * @param sequence - The vertices, longitude as x and latitude as y.
+     * @return the number of characters written; they are in getBuffer().
+     */
+    public int encode(final CoordinateSequence sequence) {
+        size = 0;
+        long lastLatitude = 0;
+        long lastLongitude = 0;
+        final int n = sequence.size();
+        for (int i = 0; i < n; i++) {
+            final long latitude = Math.round(sequence.getY(i) * scale);
+            final long longitude = Math.round(sequence.getX(i) * scale);
+            appendValue(latitude - lastLatitude);
+            appendValue(longitude - lastLongitude);
+            lastLatitude = latitude;
+            lastLongitude = longitude;
+        }
+        return size;
+    }
+
+    /**
+     * @return the characters of the last encode, as ASCII, in the first size() bytes. The
+     * array is reused by the next call.
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return the number of characters written by the last encode.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The purpose of this method is to copy the last encoded polyline to a stream. The
+     * stream is not closed.
+     *
+     * @param out - Receives the characters as ASCII.
+     * @throws IOException when the stream cannot be written.
+     */
+    public void writeTo(final OutputStream out) throws IOException {
+        out.write(buffer, 0, size);
+    }
+
+    /**
+     * @return the last encoded polyline.
+     */
+    @Override
+    public String toString() {
+        return new String(buffer, 0, size, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * The purpose of this method is to read an encoded polyline back into vertices.
+     *
+     * @param encoded   - The polyline.
+     * @param precision - Decimals it was encoded with.
+     * @return the vertices, longitude as x and latitude as y.
+     */
+    public static Coordinate[] decode(final String encoded, final int precision) {
+        final double scale = Math.pow(10, precision);
+        final List<Coordinate> coordinates = new ArrayList<Coordinate>();
+        final int[] index = new int[1];
+        long latitude = 0;
+        long longitude = 0;
+        while (index[0] < encoded.length()) {
+            latitude += readValue(encoded, index);
+            longitude += readValue(encoded, index);
+            coordinates.add(new Coordinate(longitude / scale, latitude / scale));
+        }
+        return coordinates.toArray(new Coordinate[coordinates.size()]);
+    }
+
+    private static long readValue(final String encoded, final int[] index) {
+        long value = 0;
+        int shift = 0;
+        int chunk;
+        do {
+            if (index[0] >= encoded.length()) {
+                throw new IllegalArgumentException("Truncated polyline: " + encoded);
+            }
+            chunk = encoded.charAt(index[0]++) - 63;
+            value |= (long) (chunk & 0x1F) << shift;
+            shift += 5;
+        } while (chunk >= 0x20);
+        return (value & 1) != 0 ? ~(value >> 1) : value >> 1;
+    }
+
+    /**
+     * The purpose of this method is to append one zigzag encoded difference, low 5 bits
+     * first, with 0x20 set on every group but the last.
+     */
+    private void appendValue(final long delta) {
+        long value = delta << 1;
+        if (delta < 0) {
+            value = ~value;
+        }
+        // 64 bits are at most 13 groups.
+        if (size + 13 > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(size + 13, buffer.length * 2));
+        }
+        while (value >= 0x20) {
+            buffer[size++] = (byte) ((0x20 | (value & 0x1F)) + 63);
+            value >>= 5;
+        }
+        buffer[size++] = (byte) (value + 63);
+    }
+}
@@ -1,9 +1,28 @@
 package com.exploringspatial.service;
 
 import com.exploringspatial.domain.FitActivity;
+import com.exploringspatial.domain.FitTrack;
+import com.exploringspatial.fit.FitDecodeEngine;
+import com.exploringspatial.fit.FitDecoder;
+import com.exploringspatial.fit.FitProjection;
 import com.exploringspatial.fit.GarminFitListener;
+import com.exploringspatial.geojson.FeatureCollectionWriter;
+import com.exploringspatial.geojson.FeatureSequenceWriter;
+import com.exploringspatial.geojson.GeoJsonEngine;
+import com.exploringspatial.geojson.GeoJsonWriter;
+import com.exploringspatial.geojson.PolylineEncoder;
+import com.exploringspatial.simplify.ForkJoinDouglasPeucker;
+import com.exploringspatial.simplify.IterativeDouglasPeucker;
+import com.exploringspatial.simplify.LocalProjection;
+import com.exploringspatial.simplify.PriorityDouglasPeucker;
+import com.exploringspatial.simplify.RadialDistanceFilter;
+import com.exploringspatial.simplify.SimplifyEngine;
+import com.exploringspatial.simplify.StreamingDouglasPeucker;
+import com.exploringspatial.simplify.ToleranceUnit;
+import com.exploringspatial.simplify.TrackPyramid;
 import com.garmin.fit.*;
 import com.vividsolutions.jts.geom.*;
+import com.vividsolutions.jts.geom.impl.CoordinateArraySequence;
 import com.vividsolutions.jts.simplify.DouglasPeuckerSimplifier;
 import org.apache.log4j.Logger;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
@@ -20,16 +39,248 @@ import org.opengis.referencing.FactoryException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 /**
  * The purpose of this class is to turn a Garmin FIT file into GeoJSON for
  * testing on www.exploringspatial.com
  *
+ * Once configured, an instance can be shared between threads: every call creates
+ * its own decoder, listener and JSON writers.
+ *
  * @Author Steve Mitchell
  */
 public class GarminFitService {
+    public static final double DEFAULT_TOLERANCE = 0.00001;
+    /**
+     * Version of the GeoJSON written by this class; bump it whenever the output changes
+     * so incremental imports rewrite files written by an older version.
+     */
+    public static final int OUTPUT_VERSION = 1;
     private final Logger log = Logger.getLogger(GarminFitService.class);
     private final GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory();
+    private FitDecodeEngine decodeEngine = FitDecodeEngine.NATIVE;
+    private FitProjection projection = GarminFitListener.createProjection();
+    private boolean semicircleTracks = true;
+    private double tolerance = DEFAULT_TOLERANCE;
+    private ToleranceUnit toleranceUnit = ToleranceUnit.DEGREES;
+    private int vertexBudget;
+    private SimplifyEngine simplifyEngine = SimplifyEngine.JTS;
+    private int streamingWindow;
+    private double prefilterRadius;
+    private GeoJsonEngine geoJsonEngine = GeoJsonEngine.STREAMING;
+    private int coordinatePrecision = GeoJsonWriter.DEFAULT_DECIMALS;
+    private int polylinePrecision;
+    private final ForkJoinDouglasPeucker forkJoinDouglasPeucker = new ForkJoinDouglasPeucker();
+    private final PriorityDouglasPeucker priorityDouglasPeucker = new PriorityDouglasPeucker();
+    private final ThreadLocal<GeoJsonWriter> geoJsonWriter = new ThreadLocal<GeoJsonWriter>() {
+        @Override
+        protected GeoJsonWriter initialValue() {
+            return new GeoJsonWriter();
+        }
+    };
+    /**
+     * One encoder per precision for each thread, created on first use.
+     */
+    private final ThreadLocal<PolylineEncoder[]> polylineEncoders = new ThreadLocal<PolylineEncoder[]>() {
+        @Override
+        protected PolylineEncoder[] initialValue() {
+            return new PolylineEncoder[PolylineEncoder.MAX_PRECISION + 1];
+        }
+    };
+    private final ThreadLocal<IterativeDouglasPeucker> iterativeDouglasPeucker = new ThreadLocal<IterativeDouglasPeucker>() {
+        @Override
+        protected IterativeDouglasPeucker initialValue() {
+            return new IterativeDouglasPeucker();
+        }
+    };
+
+    public FitDecodeEngine getDecodeEngine() {
+        return decodeEngine;
+    }
+
+    /**
+     * @param decodeEngine - NATIVE (the default) for the in-project FitDecoder, SDK for Decode and MesgBroadcaster.
+     */
+    public void setDecodeEngine(final FitDecodeEngine decodeEngine) {
+        this.decodeEngine = decodeEngine;
+    }
+
+    public FitProjection getProjection() {
+        return projection;
+    }
+
+    /**
+     * The purpose of this method is to limit the messages and fields the NATIVE engine
+     * decodes. Everything outside the projection is skipped by its defined byte length.
+     * Defaults to the record positions and session fields GarminFitListener uses.
+     *
+     * @param projection - The messages and fields to decode, or null to decode everything.
+     */
+    public void setProjection(final FitProjection projection) {
+        this.projection = projection;
+    }
+
+    public boolean isSemicircleTracks() {
+        return semicircleTracks;
+    }
+
+    /**
+     * @param semicircleTracks - When true (the default) decoded tracks keep the raw FIT semicircle
+     *                         integers and only convert to degrees when read. The degrees are identical
+     *                         either way; semicircles use half the memory.
+     */
+    public void setSemicircleTracks(final boolean semicircleTracks) {
+        this.semicircleTracks = semicircleTracks;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * @param tolerance - Douglas-Peucker distance tolerance in the tolerance unit; defaults to 0.00001 degrees.
+     */
+    public void setTolerance(final double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    public ToleranceUnit getToleranceUnit() {
+        return toleranceUnit;
+    }
+
+    /**
+     * The purpose of this method is to choose how simplifyLineString reads the tolerance.
+     * In METERS each track is projected to a local plane, simplified there and returned
+     * with its original WGS84 vertices, so tracks keep a similar number of points at any
+     * latitude. Track pyramids always use degrees; the streaming window converts meters
+     * to degrees of latitude, which keeps more points the farther the track is from the equator.
+     *
+     * @param toleranceUnit - DEGREES (the default) or METERS.
+     */
+    public void setToleranceUnit(final ToleranceUnit toleranceUnit) {
+        this.toleranceUnit = toleranceUnit;
+    }
+
+    public int getVertexBudget() {
+        return vertexBudget;
+    }
+
+    /**
+     * The purpose of this method is to cap the number of vertices simplifyLineString returns,
+     * for views that need a predictable rendering cost. The deviations are removed worst
+     * first until the budget is spent or the rest are within the tolerance; set the
+     * tolerance to 0 to always use the whole budget. See PriorityDouglasPeucker.
+     *
+     * @param vertexBudget - Most vertices per line, at least 2, or 0 (the default) for no limit.
+     */
+    public void setVertexBudget(final int vertexBudget) {
+        if (vertexBudget != 0 && vertexBudget < 2) {
+            throw new IllegalArgumentException("A line needs at least 2 vertices, not " + vertexBudget);
+        }
+        this.vertexBudget = vertexBudget;
+    }
+
+    public SimplifyEngine getSimplifyEngine() {
+        return simplifyEngine;
+    }
+
+    /**
+     * @param simplifyEngine - JTS (the default) for DouglasPeuckerSimplifier, FORK_JOIN to split
+     *                       long tracks across cores, ITERATIVE to simplify on primitive arrays
+     *                       with almost no garbage. All keep the same vertices.
+     */
+    public void setSimplifyEngine(final SimplifyEngine simplifyEngine) {
+        this.simplifyEngine = simplifyEngine;
+    }
+
+    public int getStreamingWindow() {
+        return streamingWindow;
+    }
+
+    /**
+     * The purpose of this method is to simplify tracks while they are decoded, for callers
+     * such as an upload service that cannot hold every point of a long activity. The track
+     * of each decoded FitActivity then only holds the kept vertices. Every dropped point is
+     * still within the tolerance, but a few more vertices may be kept than simplifyLineString
+     * keeps; see StreamingDouglasPeucker.
+     *
+     * @param streamingWindow - Most points held while decoding, e.g. StreamingDouglasPeucker.DEFAULT_WINDOW,
+     *                        or 0 (the default) to keep every point.
+     */
+    public void setStreamingWindow(final int streamingWindow) {
+        this.streamingWindow = streamingWindow;
+    }
+
+    public GeoJsonEngine getGeoJsonEngine() {
+        return geoJsonEngine;
+    }
+
+    /**
+     * @param geoJsonEngine - STREAMING (the default) for GeoJsonWriter, the writer the feature collections
+     *                      and sequences use, or GEOTOOLS for GeometryJSON and FeatureJSON, which write
+     *                      the same bytes through a SimpleFeature.
+     */
+    public void setGeoJsonEngine(final GeoJsonEngine geoJsonEngine) {
+        this.geoJsonEngine = geoJsonEngine;
+    }
+
+    public int getCoordinatePrecision() {
+        return coordinatePrecision;
+    }
+
+    /**
+     * The purpose of this method is to choose how many decimals each ordinate keeps in the
+     * GeoJSON, with either engine. 4 decimals (the default) is about 11 m at the equator,
+     * 5 about 1.1 m and 6 about 0.11 m.
+     *
+     * @param coordinatePrecision - Decimal places, from 0 to GeoJsonWriter.MAX_DECIMALS.
+     */
+    public void setCoordinatePrecision(final int coordinatePrecision) {
+        if (coordinatePrecision < 0 || coordinatePrecision > GeoJsonWriter.MAX_DECIMALS) {
+            throw new IllegalArgumentException("Precision must be from 0 to " + GeoJsonWriter.MAX_DECIMALS
+                    + ", not " + coordinatePrecision);
+        }
+        this.coordinatePrecision = coordinatePrecision;
+    }
+
+    public int getPolylinePrecision() {
+        return polylinePrecision;
+    }
+
+    /**
+     * The purpose of this method is to add a "polyline" property to every feature, with
+     * the simplified track in Google's encoded polyline format, for clients that only
+     * draw a thumbnail and need not parse the coordinate array. It applies to both
+     * engines and to feature collections and sequences.
+     *
+     * @param polylinePrecision - Decimals of the polyline, 5 for Google Maps or 6 for OSRM
+     *                          and Valhalla, or 0 (the default) to leave the property out.
+     */
+    public void setPolylinePrecision(final int polylinePrecision) {
+        this.polylinePrecision = GeoJsonWriter.checkPolylinePrecision(polylinePrecision);
+    }
+
+    public double getPrefilterRadius() {
+        return prefilterRadius;
+    }
+
+    /**
+     * The purpose of this method is to drop points while decoding that lie within a radius of
+     * the previous point kept, before any simplification. A radius no larger than the tolerance
+     * keeps every dropped point within twice the tolerance of the simplified line; see
+     * RadialDistanceFilter. The radius is in the tolerance unit; meters are converted to degrees
+     * of latitude.
+     *
+     * @param prefilterRadius - Radius, Double.MIN_VALUE to only drop repeated positions, or 0 (the default)
+     *                        to keep every point.
+     */
+    public void setPrefilterRadius(final double prefilterRadius) {
+        this.prefilterRadius = prefilterRadius;
+    }
 
     /**
      * The purpose of this method is to read a Garmin FIT file from an
@@ -39,7 +290,10 @@ public class GarminFitService {
      * @return FitActivity - date from FIT file.
      */
     public FitActivity decodeFitFile(final InputStream in) {
-        final GarminFitListener listener = new GarminFitListener(new FitActivity());
+        final GarminFitListener listener = createListener();
+        if (decodeEngine == FitDecodeEngine.NATIVE) {
+            return decodeNative(in, listener);
+        }
         final Decode decode = new Decode();
         final MesgBroadcaster mesgBroadcaster = new MesgBroadcaster(decode);
         mesgBroadcaster.addListener((RecordMesgListener) listener);
@@ -64,9 +318,105 @@ public class GarminFitService {
         } catch (java.io.IOException e) {
             throw new RuntimeException(e);
         }
+        listener.finish();
+        return listener.getFitActivity();
+    }
+
+    private FitActivity decodeNative(final InputStream in, final GarminFitListener listener) {
+        try {
+            createDecoder().decode(in, listener);
+            listener.finish();
+        } catch (FitRuntimeException e) {
+            log.error("Exception decoding file: ");
+            log.error(e.getMessage());
+            return null;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return listener.getFitActivity();
+    }
+
+    /**
+     * The purpose of this method is to decode a FIT file by memory mapping it,
+     * so the decoder reads the page cache directly instead of going through a stream.
+     * Always uses the NATIVE engine.
+     *
+     * @param path - Location of a Garmin FIT file.
+     * @return FitActivity - data from FIT file, or null if it could not be decoded.
+     * @throws IOException when the file cannot be opened or mapped.
+     */
+    public FitActivity decodeFitFile(final Path path) throws IOException {
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return decodeFitFile(channel);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * The purpose of this method is to decode the whole content of an open channel
+     * through a read-only mapping. The channel is left open. Always uses the NATIVE engine.
+     *
+     * @param channel - FileChannel of a Garmin FIT file.
+     * @return FitActivity - data from FIT file, or null if it could not be decoded.
+     * @throws IOException when the channel cannot be mapped.
+     */
+    public FitActivity decodeFitFile(final FileChannel channel) throws IOException {
+        return decodeFitFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+
+    /**
+     * The purpose of this method is to decode FIT content already in memory, such as an
+     * upload held in a heap buffer or a MappedByteBuffer. The buffer's position and limit
+     * are left unchanged. Always uses the NATIVE engine.
+     *
+     * @param buffer - The bytes between position and limit are decoded.
+     * @return FitActivity - data from FIT file, or null if it could not be decoded.
+     */
+    public FitActivity decodeFitFile(final ByteBuffer buffer) {
+        final GarminFitListener listener = createListener();
+        try {
+            createDecoder().decode(buffer, listener);
+            listener.finish();
+        } catch (FitRuntimeException e) {
+            log.error("Exception decoding file: ");
+            log.error(e.getMessage());
+            return null;
+        }
         return listener.getFitActivity();
     }
 
+    private GarminFitListener createListener() {
+        final FitActivity fitActivity = createFitActivity();
+        final RadialDistanceFilter filter = prefilterRadius > 0 ? new RadialDistanceFilter(toDegrees(prefilterRadius)) : null;
+        final StreamingDouglasPeucker simplifier = streamingWindow > 0
+                ? new StreamingDouglasPeucker(fitActivity.getTrack(), toDegrees(tolerance), streamingWindow) : null;
+        return new GarminFitListener(fitActivity, filter, simplifier);
+    }
+
+    private double toDegrees(final double distance) {
+        return toleranceUnit == ToleranceUnit.METERS ? distance / LocalProjection.METERS_PER_DEGREE : distance;
+    }
+
+    private FitActivity createFitActivity() {
+        final FitActivity fitActivity = new FitActivity();
+        fitActivity.setTrack(new FitTrack(semicircleTracks));
+        return fitActivity;
+    }
+
+    private FitDecoder createDecoder() {
+        final FitDecoder decoder = new FitDecoder();
+        decoder.setProjection(projection);
+        return decoder;
+    }
+
     /**
      * The purpose of this method is to use the
      * Douglas-Peuker line simplification algorithm to reduce the
@@ -76,16 +426,105 @@ public class GarminFitService {
      * @return Simplified Geometry.
      */
     public Geometry simplifyLineString(final Coordinate[] polyline) {
+        if (simplifyEngine == SimplifyEngine.ITERATIVE || toleranceUnit == ToleranceUnit.METERS || vertexBudget > 0) {
+            return simplifyLineString(new CoordinateArraySequence(polyline));
+        }
+        final LineString lineString = geometryFactory.createLineString(polyline);
+        return simplify(lineString);
+    }
 
+    /**
+     * The purpose of this method is to simplify a track without first copying it
+     * into a Coordinate array, for example the sequence from FitTrack.toCoordinateSequence().
+     *
+     * @param polyline - The full set of points from the device.
+     * @return Simplified Geometry.
+     */
+    public Geometry simplifyLineString(final CoordinateSequence polyline) {
+        if (vertexBudget > 0) {
+            final int[] indices = toleranceUnit == ToleranceUnit.METERS
+                    ? priorityDouglasPeucker.simplifyInMeters(polyline, vertexBudget, tolerance)
+                    : priorityDouglasPeucker.simplify(polyline, vertexBudget, tolerance);
+            return createLineString(polyline, indices, indices.length);
+        }
+        if (toleranceUnit == ToleranceUnit.METERS) {
+            return simplifyInMeters(polyline);
+        }
+        if (simplifyEngine == SimplifyEngine.ITERATIVE) {
+            final IterativeDouglasPeucker simplifier = iterativeDouglasPeucker.get();
+            final int count = simplifier.simplify(polyline, tolerance);
+            return createLineString(polyline, simplifier.getIndices(), count);
+        }
         final LineString lineString = geometryFactory.createLineString(polyline);
-        return DouglasPeuckerSimplifier.simplify(lineString, 0.00001);
+        return simplify(lineString);
+    }
+
+    private Geometry simplify(final LineString lineString) {
+        if (simplifyEngine == SimplifyEngine.FORK_JOIN && !lineString.isEmpty()) {
+            return geometryFactory.createLineString(
+                    forkJoinDouglasPeucker.simplify(lineString.getCoordinateSequence(), tolerance));
+        }
+        return DouglasPeuckerSimplifier.simplify(lineString, tolerance);
+    }
+
+    /**
+     * The purpose of this method is to simplify on the track projected to meters and
+     * return the original vertices. JTS has no meter mode, so the JTS engine uses the
+     * iterative simplifier here; it keeps the same vertices.
+     */
+    private Geometry simplifyInMeters(final CoordinateSequence polyline) {
+        if (simplifyEngine == SimplifyEngine.FORK_JOIN) {
+            return geometryFactory.createLineString(forkJoinDouglasPeucker.simplifyInMeters(polyline, tolerance));
+        }
+        final IterativeDouglasPeucker simplifier = iterativeDouglasPeucker.get();
+        final int count = simplifier.simplifyInMeters(polyline, tolerance);
+        return createLineString(polyline, simplifier.getIndices(), count);
+    }
+
+    private LineString createLineString(final CoordinateSequence polyline, final int[] indices, final int count) {
+        final Coordinate[] coordinates = new Coordinate[count];
+        for (int i = 0; i < count; i++) {
+            coordinates[i] = polyline.getCoordinateCopy(indices[i]);
+        }
+        return geometryFactory.createLineString(coordinates);
+    }
+
+    /**
+     * The purpose of this method is to run Douglas-Peucker over an activity's track once,
+     * so the track can then be written at any tolerance or zoom level without simplifying again.
+     *
+     * @param fitActivity - The decoded activity.
+     * @return the level of detail pyramid of its track.
+     */
+    public TrackPyramid buildTrackPyramid(final FitActivity fitActivity) {
+        return new TrackPyramid(fitActivity.getTrack());
+    }
+
+    /**
+     * The purpose of this method is to extract the track for one tolerance from a pyramid.
+     * The result is the same as simplifyLineString with that tolerance.
+     *
+     * @param pyramid - From buildTrackPyramid.
+     * @param tolerance - Douglas-Peucker distance tolerance in degrees.
+     * @return Simplified Geometry.
+     */
+    public Geometry simplifyLineString(final TrackPyramid pyramid, final double tolerance) {
+        if (pyramid.size() == 0) {
+            return geometryFactory.createLineString(new Coordinate[0]);
+        }
+        return geometryFactory.createLineString(pyramid.getCoordinates(tolerance));
     }
 
     public void writeLinestringGeoJSON(final Coordinate[] polyline, final OutputStream out) {
         final Geometry geometry = simplifyLineString(polyline);
-        final GeometryJSON geometryJSON = new GeometryJSON();
         try {
-            geometryJSON.write(geometry, out);
+            if (geoJsonEngine == GeoJsonEngine.STREAMING) {
+                final GeoJsonWriter writer = getGeoJsonWriter();
+                writer.writeLineString(geometry);
+                writer.writeTo(out);
+            } else {
+                new GeometryJSON(coordinatePrecision).write(geometry, out);
+            }
         } catch (IOException e) {
             e.printStackTrace();
         } finally {
@@ -97,8 +536,52 @@ public class GarminFitService {
         }
     }
 
+    /**
+     * The purpose of this method is to encode a simplified track as a Google encoded polyline.
+     * @param geometry - The simplified track, e.g. from simplifyLineString.
+     * @param precision - Decimals of the polyline, 5 or 6.
+     * @return the encoded polyline.
+     */
+    public String encodePolyline(final Geometry geometry, final int precision) {
+        final PolylineEncoder encoder = getPolylineEncoder(precision);
+        encoder.encode(geometry);
+        return encoder.toString();
+    }
+
+    /**
+     * The purpose of this method is to write a track as a Google encoded polyline instead
+     * of GeoJSON, e.g. for a route thumbnail. The track is simplified first, as for
+     * writeLinestringGeoJSON, and the characters are copied to the stream from this
+     * thread's encoder without building a String.
+     * @param polyline - The full set of points.
+     * @param precision - Decimals of the polyline, 5 or 6.
+     * @param out - Receives the polyline as ASCII; it is closed afterwards.
+     */
+    public void writeEncodedPolyline(final Coordinate[] polyline, final int precision, final OutputStream out) throws IOException {
+        final PolylineEncoder encoder = getPolylineEncoder(precision);
+        encoder.encode(simplifyLineString(polyline));
+        try {
+            encoder.writeTo(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    private PolylineEncoder getPolylineEncoder(final int precision) {
+        final PolylineEncoder[] encoders = polylineEncoders.get();
+        if (precision < 0 || precision >= encoders.length) {
+            throw new IllegalArgumentException("Polyline precision must be from 0 to " + PolylineEncoder.MAX_PRECISION
+                    + ", not " + precision);
+        }
+        if (encoders[precision] == null) {
+            encoders[precision] = new PolylineEncoder(precision);
+        }
+        return encoders[precision];
+    }
+
     /**
      * The purpose of this method is to generate the schema definition for the GeoJSON.
+     * The polyline attribute is only added when a polyline precision is set.
      * @return SimpleFeatureType defining the the feature properties.
      */
     public SimpleFeatureType getFeatureSchema() {
@@ -116,6 +599,9 @@ public class GarminFitService {
         simpleFeatureType.add("minLon", Double.class);
         simpleFeatureType.add("maxLat", Double.class);
         simpleFeatureType.add("maxLon", Double.class);
+        if (polylinePrecision > 0) {
+            simpleFeatureType.add("polyline", String.class);
+        }
         return simpleFeatureType.buildFeatureType();
     }
 
@@ -126,6 +612,17 @@ public class GarminFitService {
      * @return
      */
     public SimpleFeature buildSimpleFeature(final FitActivity fitActivity) {
+        return buildSimpleFeature(fitActivity, simplifyLineString(fitActivity.getTrack().toCoordinateSequence()));
+    }
+
+    /**
+     * The purpose of this method is to build a SimpleFeature around a track that has
+     * already been simplified, for callers that simplify in a separate step.
+     * @param fitActivity - Source of the feature properties.
+     * @param geometry - The simplified track.
+     * @return the feature.
+     */
+    public SimpleFeature buildSimpleFeature(final FitActivity fitActivity, final Geometry geometry) {
         final SimpleFeatureType featureSchema = getFeatureSchema();
         final SimpleFeatureBuilder builder = new SimpleFeatureBuilder(featureSchema);
         builder.set("activityId", fitActivity.getActivityId());
@@ -134,24 +631,169 @@ public class GarminFitService {
         builder.set("startTime", fitActivity.getStartTime());
         builder.set("totalMeters", fitActivity.getTotalMeters());
         builder.set("totalSeconds", fitActivity.getTotalSeconds());
-        final Coordinate[] polyline = fitActivity.getPolyline().toArray(new Coordinate[fitActivity.getPolyline().size()]);
-        final Geometry geometry = simplifyLineString(polyline);
         builder.add(geometry);
         final Coordinate[] boundingBox = generateBoundingBox(geometry);
         builder.set("minLat", boundingBox[0].y);
         builder.set("minLon", boundingBox[0].x);
         builder.set("maxLat", boundingBox[1].y);
         builder.set("maxLon", boundingBox[1].x);
+        if (polylinePrecision > 0) {
+            builder.set("polyline", encodePolyline(geometry, polylinePrecision));
+        }
         return builder.buildFeature(fitActivity.getActivityId().toString());
     }
 
     public void writeFeatureGeoJSON(final FitActivity fitActivity, final OutputStream out) throws FactoryException, IOException {
-        final SimpleFeature feature = buildSimpleFeature(fitActivity);
-        final FeatureJSON fj = new FeatureJSON();
+        writeFeatureGeoJSON(fitActivity, simplifyLineString(fitActivity.getTrack().toCoordinateSequence()), out);
+    }
+
+    /**
+     * The purpose of this method is to write a feature whose track was simplified beforehand.
+     * @param fitActivity - Source of the feature properties.
+     * @param geometry - The simplified track, e.g. from simplifyLineString.
+     * @param out - Receives the GeoJSON; it is closed afterwards.
+     */
+    public void writeFeatureGeoJSON(final FitActivity fitActivity, final Geometry geometry, final OutputStream out) throws FactoryException, IOException {
+        if (geoJsonEngine == GeoJsonEngine.STREAMING) {
+            writeStreamingFeature(fitActivity, geometry, out);
+        } else {
+            writeFeature(buildSimpleFeature(fitActivity, geometry), out);
+        }
+    }
+
+    /**
+     * The purpose of this method is to write a feature with its track taken from a pyramid.
+     * @param fitActivity - Source of the feature properties.
+     * @param pyramid - From buildTrackPyramid.
+     * @param tolerance - Douglas-Peucker distance tolerance in degrees.
+     * @param out - Receives the GeoJSON; it is closed afterwards.
+     */
+    public void writeFeatureGeoJSON(final FitActivity fitActivity, final TrackPyramid pyramid, final double tolerance,
+                                    final OutputStream out) throws FactoryException, IOException {
+        writeFeatureGeoJSON(fitActivity, simplifyLineString(pyramid, tolerance), out);
+    }
+
+    /**
+     * The purpose of this method is to write a feature with about one vertex per pixel
+     * at a Web Mercator zoom level.
+     * @param fitActivity - Source of the feature properties.
+     * @param pyramid - From buildTrackPyramid.
+     * @param zoom - Map zoom level; see TrackPyramid.toleranceForZoom.
+     * @param out - Receives the GeoJSON; it is closed afterwards.
+     */
+    public void writeFeatureGeoJSONForZoom(final FitActivity fitActivity, final TrackPyramid pyramid, final int zoom,
+                                           final OutputStream out) throws FactoryException, IOException {
+        writeFeatureGeoJSON(fitActivity, pyramid, TrackPyramid.toleranceForZoom(zoom), out);
+    }
+
+    /**
+     * The purpose of this method is to start a FeatureCollection that activities are added
+     * to one at a time, e.g. all of an athlete's activities or one year of them, so a map
+     * can load them with a single request. Features keep the coordinate precision; they
+     * are always written by GeoJsonWriter, whichever engine is set.
+     * @param out - Receives the collection; it is closed when the writer is closed.
+     * @return the writer; add features with writeFeature and close it when done.
+     * @throws IOException when the opening of the collection cannot be written.
+     */
+    public FeatureCollectionWriter openFeatureCollection(final OutputStream out) throws IOException {
+        final FeatureCollectionWriter collection = new FeatureCollectionWriter(out, coordinatePrecision);
+        collection.setPolylinePrecision(polylinePrecision);
+        return collection;
+    }
+
+    /**
+     * The purpose of this method is to write several activities as one FeatureCollection.
+     * Each track is simplified and written before the next is read from the iterator, so
+     * an iterator that decodes lazily keeps only one activity in memory.
+     * @param fitActivities - The activities, in the order to write them.
+     * @param out - Receives the GeoJSON; it is closed afterwards.
+     * @return the number of features written.
+     */
+    public int writeFeatureCollectionGeoJSON(final Iterable<FitActivity> fitActivities, final OutputStream out) throws IOException {
+        final FeatureCollectionWriter collection = openFeatureCollection(out);
+        try {
+            for (final FitActivity fitActivity : fitActivities) {
+                collection.writeFeature(fitActivity, simplifyLineString(fitActivity.getTrack().toCoordinateSequence()));
+            }
+        } finally {
+            collection.close();
+        }
+        return collection.getCount();
+    }
+
+    /**
+     * The purpose of this method is to start a GeoJSON text sequence that activities are
+     * added to one line at a time, for loaders that split files at line breaks. Features
+     * keep the coordinate precision; they are always written by GeoJsonWriter, whichever
+     * engine is set.
+     * @param out - Receives the sequence; it is closed when the writer is closed.
+     * @param recordSeparator - True for RFC 8142 (each line starts with 0x1E), false for
+     *                        newline delimited GeoJSON.
+     * @return the writer; add features with writeFeature and close it when done.
+     */
+    public FeatureSequenceWriter openFeatureSequence(final OutputStream out, final boolean recordSeparator) {
+        final FeatureSequenceWriter sequence = new FeatureSequenceWriter(out, coordinatePrecision, recordSeparator);
+        sequence.setPolylinePrecision(polylinePrecision);
+        return sequence;
+    }
+
+    /**
+     * The purpose of this method is to write several activities as a GeoJSON text sequence.
+     * Each track is simplified and written before the next is read from the iterator.
+     * @param fitActivities - The activities, in the order to write them.
+     * @param out - Receives the GeoJSON; it is closed afterwards.
+     * @param recordSeparator - True for RFC 8142, false for newline delimited GeoJSON.
+     * @return the number of features written.
+     */
+    public int writeFeatureSequenceGeoJSON(final Iterable<FitActivity> fitActivities, final OutputStream out,
+                                           final boolean recordSeparator) throws IOException {
+        final FeatureSequenceWriter sequence = openFeatureSequence(out, recordSeparator);
+        try {
+            for (final FitActivity fitActivity : fitActivities) {
+                sequence.writeFeature(fitActivity, simplifyLineString(fitActivity.getTrack().toCoordinateSequence()));
+            }
+        } finally {
+            sequence.close();
+        }
+        return sequence.getCount();
+    }
+
+    /**
+     * The purpose of this method is to write a feature with GeoJsonWriter. The id is "0",
+     * as in the feature.json fixture recorded from FeatureJSON.
+     */
+    private void writeStreamingFeature(final FitActivity fitActivity, final Geometry geometry, final OutputStream out) throws IOException {
+        final GeoJsonWriter writer = getGeoJsonWriter();
+        writer.writeFeature(fitActivity, geometry, "0");
+        try {
+            writer.writeTo(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return this thread's writer, empty and set to the coordinate and polyline precision.
+     */
+    private GeoJsonWriter getGeoJsonWriter() {
+        final GeoJsonWriter writer = geoJsonWriter.get();
+        writer.reset();
+        writer.setDecimals(coordinatePrecision);
+        writer.setPolylinePrecision(polylinePrecision);
+        return writer;
+    }
+
+    /**
+     * The purpose of this method is to write a feature with FeatureJSON. A failure inside
+     * GeoTools is rethrown as an IOException, so callers writing to a temporary file
+     * discard it instead of keeping a partial feature.
+     */
+    private void writeFeature(final SimpleFeature feature, final OutputStream out) throws IOException {
+        final FeatureJSON fj = new FeatureJSON(new GeometryJSON(coordinatePrecision));
         try {
             fj.writeFeature(feature, out);
         } catch(RuntimeException e) {
-            log.error(e);
+            throw new IOException("Cannot write feature " + feature.getID(), e);
         } finally {
             try {
                 out.close();
@@ -0,0 +1,159 @@
+package com.exploringspatial.simplify;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The purpose of this class is to simplify very long tracks with Douglas-Peucker on several
+ * cores. Each farthest-point split leaves two independent sections; sections with at least
+ * threshold points are forked as ForkJoin tasks and shorter ones are finished on the current
+ * thread with an explicit stack, so there is no deep recursion either way.
+ *
+ * The splits, the distance arithmetic and the tie breaking are those of JTS
+ * DouglasPeuckerLineSimplifier, so the vertices kept are exactly the ones it keeps.
+ *
+ * @author Steve Mitchell
+ */
+public class ForkJoinDouglasPeucker {
+    public static final int DEFAULT_THRESHOLD = 8192;
+    private final ForkJoinPool pool;
+    private final int threshold;
+
+    public ForkJoinDouglasPeucker() {
+        this(ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param pool      - Runs the section tasks.
+     * @param threshold - Sections with fewer points than this are not split into further tasks.
+     */
+    public ForkJoinDouglasPeucker(final ForkJoinPool pool, final int threshold) {
+        this.pool = pool;
+        this.threshold = Math.max(3, threshold);
+    }
+
+    /**
+     * The purpose of this method is to simplify a coordinate sequence.
+     *
+     * @param sequence  - The full set of points.
+     * @param tolerance - Douglas-Peucker distance tolerance.
+     * @return copies of the vertices kept, in order.
+     */
+    public Coordinate[] simplify(final CoordinateSequence sequence, final double tolerance) {
+        final int n = sequence.size();
+        final double[] x = new double[n];
+        final double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = sequence.getX(i);
+            y[i] = sequence.getY(i);
+        }
+        return collect(sequence, simplify(x, y, tolerance));
+    }
+
+    /**
+     * The purpose of this method is to simplify with a tolerance in meters, on the points
+     * projected by LocalProjection.
+     *
+     * @param sequence        - The full set of points, in degrees.
+     * @param toleranceMeters - Douglas-Peucker distance tolerance in meters.
+     * @return copies of the vertices kept, in order.
+     */
+    public Coordinate[] simplifyInMeters(final CoordinateSequence sequence, final double toleranceMeters) {
+        final int n = sequence.size();
+        final double[] x = new double[n];
+        final double[] y = new double[n];
+        LocalProjection.project(sequence, x, y);
+        return collect(sequence, simplify(x, y, toleranceMeters));
+    }
+
+    private static Coordinate[] collect(final CoordinateSequence sequence, final boolean[] keep) {
+        final int n = keep.length;
+        final List<Coordinate> coordinates = new ArrayList<Coordinate>();
+        for (int i = 0; i < n; i++) {
+            if (keep[i]) {
+                coordinates.add(sequence.getCoordinateCopy(i));
+            }
+        }
+        return coordinates.toArray(new Coordinate[coordinates.size()]);
+    }
+
+    /**
+     * The purpose of this method is to simplify a line held as two coordinate arrays.
+     *
+     * @param x         - X of each point.
+     * @param y         - Y of each point.
+     * @param tolerance - Douglas-Peucker distance tolerance.
+     * @return true for each point that is kept.
+     */
+    public boolean[] simplify(final double[] x, final double[] y, final double tolerance) {
+        final boolean[] keep = new boolean[x.length];
+        Arrays.fill(keep, true);
+        if (x.length > 2) {
+            pool.invoke(new SectionTask(x, y, keep, tolerance, 0, x.length - 1));
+        }
+        return keep;
+    }
+
+    private class SectionTask extends RecursiveAction {
+        private final double[] x;
+        private final double[] y;
+        private final boolean[] keep;
+        private final double tolerance;
+        private final int start;
+        private final int end;
+
+        SectionTask(final double[] x, final double[] y, final boolean[] keep, final double tolerance,
+                    final int start, final int end) {
+            this.x = x;
+            this.y = y;
+            this.keep = keep;
+            this.tolerance = tolerance;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            final double[] distance = new double[1];
+            final List<SectionTask> forked = new ArrayList<SectionTask>();
+            // Sections still to split on this thread, as start and end pairs.
+            final int[] stack = new int[2 * (end - start + 1)];
+            int depth = 0;
+            stack[depth++] = start;
+            stack[depth++] = end;
+            while (depth > 0) {
+                final int sectionEnd = stack[--depth];
+                final int sectionStart = stack[--depth];
+                if (sectionStart + 1 >= sectionEnd) {
+                    continue;
+                }
+                if (sectionEnd - sectionStart + 1 >= threshold && (sectionStart != start || sectionEnd != end)) {
+                    final SectionTask task = new SectionTask(x, y, keep, tolerance, sectionStart, sectionEnd);
+                    task.fork();
+                    forked.add(task);
+                    continue;
+                }
+                final int maxIndex = SegmentDistance.farthestPoint(x, y, sectionStart, sectionEnd, distance);
+                if (distance[0] <= tolerance) {
+                    for (int k = sectionStart + 1; k < sectionEnd; k++) {
+                        keep[k] = false;
+                    }
+                } else {
+                    stack[depth++] = maxIndex;
+                    stack[depth++] = sectionEnd;
+                    stack[depth++] = sectionStart;
+                    stack[depth++] = maxIndex;
+                }
+            }
+            for (final SectionTask task : forked) {
+                task.join();
+            }
+        }
+    }
+}
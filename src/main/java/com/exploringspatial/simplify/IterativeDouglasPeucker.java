@@ -0,0 +1,163 @@
+package com.exploringspatial.simplify;
+
+import com.exploringspatial.domain.FitTrack;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+
+/**
+ * The purpose of this class is to run Douglas-Peucker on primitive longitude and latitude
+ * arrays and report the kept vertices as indices, without building a LineString, a
+ * Coordinate array or a keep mask. Sections are split with an explicit stack, left half
+ * first, so the kept indices come out in track order.
+ *
+ * The coordinate, stack and index buffers belong to the instance and only grow, so once an
+ * instance has seen the longest track of a batch, simplifying the rest allocates nothing.
+ * An instance is therefore not thread safe; give each thread its own.
+ *
+ * The splits, the distance arithmetic and the tie breaking are those of JTS
+ * DouglasPeuckerLineSimplifier, so the vertices kept are exactly the ones it keeps.
+ *
+ * @author Steve Mitchell
+ */
+public class IterativeDouglasPeucker {
+    private static final int DEFAULT_CAPACITY = 1024;
+    private final double[] distance = new double[1];
+    private double[] x = new double[DEFAULT_CAPACITY];
+    private double[] y = new double[DEFAULT_CAPACITY];
+    private int[] stack = new int[2 * DEFAULT_CAPACITY];
+    private int[] indices = new int[DEFAULT_CAPACITY];
+    private int count;
+
+    /**
+     * The purpose of this method is to simplify a track straight from its columns.
+     *
+     * @param track     - The full set of points.
+     * @param tolerance - Douglas-Peucker distance tolerance in degrees.
+     * @return the number of vertices kept; their indices are in getIndices().
+     */
+    public int simplify(final FitTrack track, final double tolerance) {
+        final int n = track.size();
+        ensureCoordinateCapacity(n);
+        for (int i = 0; i < n; i++) {
+            x[i] = track.getLongitude(i);
+            y[i] = track.getLatitude(i);
+        }
+        return simplify(x, y, n, tolerance);
+    }
+
+    /**
+     * @param sequence  - The full set of points.
+     * @param tolerance - Douglas-Peucker distance tolerance.
+     * @return the number of vertices kept; their indices are in getIndices().
+     */
+    public int simplify(final CoordinateSequence sequence, final double tolerance) {
+        final int n = sequence.size();
+        ensureCoordinateCapacity(n);
+        for (int i = 0; i < n; i++) {
+            x[i] = sequence.getX(i);
+            y[i] = sequence.getY(i);
+        }
+        return simplify(x, y, n, tolerance);
+    }
+
+    /**
+     * The purpose of this method is to simplify with a tolerance in meters. The points are
+     * projected with LocalProjection into the instance's buffers first.
+     *
+     * @param sequence        - The full set of points, in degrees.
+     * @param toleranceMeters - Douglas-Peucker distance tolerance in meters.
+     * @return the number of vertices kept; their indices are in getIndices().
+     */
+    public int simplifyInMeters(final CoordinateSequence sequence, final double toleranceMeters) {
+        final int n = sequence.size();
+        ensureCoordinateCapacity(n);
+        LocalProjection.project(sequence, x, y);
+        return simplify(x, y, n, toleranceMeters);
+    }
+
+    /**
+     * @param coordinates - The full set of points.
+     * @param tolerance   - Douglas-Peucker distance tolerance.
+     * @return the number of vertices kept; their indices are in getIndices().
+     */
+    public int simplify(final Coordinate[] coordinates, final double tolerance) {
+        final int n = coordinates.length;
+        ensureCoordinateCapacity(n);
+        for (int i = 0; i < n; i++) {
+            x[i] = coordinates[i].x;
+            y[i] = coordinates[i].y;
+        }
+        return simplify(x, y, n, tolerance);
+    }
+
+    /**
+     * The purpose of this method is to simplify the first n points of a line held as two
+     * coordinate arrays. The arrays are only read.
+     *
+     * @param xs        - X of each point.
+     * @param ys        - Y of each point.
+     * @param n         - Number of points to use.
+     * @param tolerance - Douglas-Peucker distance tolerance.
+     * @return the number of vertices kept; their indices are in getIndices().
+     */
+    public int simplify(final double[] xs, final double[] ys, final int n, final double tolerance) {
+        count = 0;
+        if (n == 0) {
+            return count;
+        }
+        if (indices.length < n) {
+            indices = new int[Math.max(n, indices.length + (indices.length >> 1))];
+        }
+        // Depth never exceeds one pending section per vertex.
+        if (stack.length < 2 * n) {
+            stack = new int[Math.max(2 * n, stack.length + (stack.length >> 1))];
+        }
+        int depth = 0;
+        stack[depth++] = 0;
+        stack[depth++] = n - 1;
+        while (depth > 0) {
+            final int end = stack[--depth];
+            final int start = stack[--depth];
+            if (start + 1 >= end) {
+                indices[count++] = start;
+                continue;
+            }
+            final int maxIndex = SegmentDistance.farthestPoint(xs, ys, start, end, distance);
+            if (distance[0] <= tolerance) {
+                indices[count++] = start;
+            } else {
+                stack[depth++] = maxIndex;
+                stack[depth++] = end;
+                stack[depth++] = start;
+                stack[depth++] = maxIndex;
+            }
+        }
+        if (n > 1) {
+            indices[count++] = n - 1;
+        }
+        return count;
+    }
+
+    /**
+     * @return the indices kept by the last call to simplify, in track order, in the first
+     * getCount() entries. The array is reused by the next call.
+     */
+    public int[] getIndices() {
+        return indices;
+    }
+
+    /**
+     * @return the number of vertices kept by the last call to simplify.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    private void ensureCoordinateCapacity(final int n) {
+        if (x.length < n) {
+            final int capacity = Math.max(n, x.length + (x.length >> 1));
+            x = new double[capacity];
+            y = new double[capacity];
+        }
+    }
+}
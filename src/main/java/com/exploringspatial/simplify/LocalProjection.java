@@ -0,0 +1,59 @@
+package com.exploringspatial.simplify;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+
+/**
+ * The purpose of this class is to project a track onto a flat plane in meters without a
+ * CRS lookup, so a tolerance in meters means the same ground distance anywhere. It uses
+ * an equirectangular projection centered on the track: longitude is scaled by the cosine
+ * of the latitude halfway between the track's southern and northern extent, which costs
+ * one cosine per track. Over the few kilometers of an activity the scale error is far
+ * below any useful tolerance; it reaches about 1% only for a track spanning 150 km north
+ * to south at 45 degrees latitude.
+ *
+ * @author Steve Mitchell
+ */
+public final class LocalProjection {
+    /**
+     * Mean earth radius in meters.
+     */
+    public static final double EARTH_RADIUS = 6371008.8;
+    public static final double METERS_PER_DEGREE = EARTH_RADIUS * Math.PI / 180D;
+
+    private LocalProjection() {
+    }
+
+    /**
+     * The purpose of this method is to project every point of a sequence. x is measured
+     * east from the first point, so tracks crossing the antimeridian stay continuous.
+     *
+     * @param sequence - Longitude as x and latitude as y, in degrees.
+     * @param x        - Receives meters east; at least sequence.size() long.
+     * @param y        - Receives meters north; at least sequence.size() long.
+     */
+    public static void project(final CoordinateSequence sequence, final double[] x, final double[] y) {
+        final int n = sequence.size();
+        if (n == 0) {
+            return;
+        }
+        double minLatitude = Double.POSITIVE_INFINITY;
+        double maxLatitude = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            final double latitude = sequence.getY(i);
+            minLatitude = Math.min(minLatitude, latitude);
+            maxLatitude = Math.max(maxLatitude, latitude);
+        }
+        final double scale = Math.cos(Math.toRadians((minLatitude + maxLatitude) / 2D)) * METERS_PER_DEGREE;
+        final double originLongitude = sequence.getX(0);
+        for (int i = 0; i < n; i++) {
+            double longitude = sequence.getX(i) - originLongitude;
+            if (longitude > 180D) {
+                longitude -= 360D;
+            } else if (longitude < -180D) {
+                longitude += 360D;
+            }
+            x[i] = longitude * scale;
+            y[i] = sequence.getY(i) * METERS_PER_DEGREE;
+        }
+    }
+}
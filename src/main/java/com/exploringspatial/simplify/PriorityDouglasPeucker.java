@@ -0,0 +1,138 @@
+package com.exploringspatial.simplify;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * The purpose of this class is to simplify a track to a fixed number of vertices. It runs
+ * Douglas-Peucker best first: the sections waiting to be split sit in a priority queue
+ * ordered by the distance of their farthest point, and the worst approximated section is
+ * always split next. Stopping after N splits gives the N vertex line with the worst
+ * deviations removed first, in O(n log n) for typical tracks.
+ *
+ * Splitting also stops once every remaining section is within the tolerance, so short or
+ * straight tracks are not padded to the budget. With a budget the track cannot reach, the
+ * vertices kept are exactly those of DouglasPeuckerSimplifier at that tolerance.
+ *
+ * The class holds no state and can be shared between threads.
+ *
+ * @author Steve Mitchell
+ */
+public class PriorityDouglasPeucker {
+    private static final Comparator<Section> WORST_FIRST = new Comparator<Section>() {
+        @Override
+        public int compare(final Section a, final Section b) {
+            final int byDistance = Double.compare(b.distance, a.distance);
+            return byDistance != 0 ? byDistance : a.start - b.start;
+        }
+    };
+
+    /**
+     * @param sequence    - The full set of points.
+     * @param maxVertices - Most vertices to keep; at least 2.
+     * @param tolerance   - Sections within this distance are not split.
+     * @return the indices of the vertices kept, in track order.
+     */
+    public int[] simplify(final CoordinateSequence sequence, final int maxVertices, final double tolerance) {
+        final int n = sequence.size();
+        final double[] x = new double[n];
+        final double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = sequence.getX(i);
+            y[i] = sequence.getY(i);
+        }
+        return simplify(x, y, n, maxVertices, tolerance);
+    }
+
+    /**
+     * The purpose of this method is to rank deviations in meters, on the points projected
+     * by LocalProjection, so tracks far from the equator are ranked by ground distance.
+     *
+     * @param sequence        - The full set of points, in degrees.
+     * @param maxVertices     - Most vertices to keep; at least 2.
+     * @param toleranceMeters - Sections within this many meters are not split.
+     * @return the indices of the vertices kept, in track order.
+     */
+    public int[] simplifyInMeters(final CoordinateSequence sequence, final int maxVertices, final double toleranceMeters) {
+        final int n = sequence.size();
+        final double[] x = new double[n];
+        final double[] y = new double[n];
+        LocalProjection.project(sequence, x, y);
+        return simplify(x, y, n, maxVertices, toleranceMeters);
+    }
+
+    /**
+     * @param x           - X of each point.
+     * @param y           - Y of each point.
+     * @param n           - Number of points to use.
+     * @param maxVertices - Most vertices to keep; at least 2.
+     * @param tolerance   - Sections within this distance are not split.
+     * @return the indices of the vertices kept, in track order.
+     */
+    public int[] simplify(final double[] x, final double[] y, final int n, final int maxVertices, final double tolerance) {
+        if (maxVertices < 2) {
+            throw new IllegalArgumentException("A line needs at least 2 vertices, not " + maxVertices);
+        }
+        if (n <= 2) {
+            final int[] indices = new int[n];
+            for (int i = 0; i < n; i++) {
+                indices[i] = i;
+            }
+            return indices;
+        }
+        final boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+        int count = 2;
+        final double[] distance = new double[1];
+        final PriorityQueue<Section> queue = new PriorityQueue<Section>(64, WORST_FIRST);
+        queue.add(createSection(x, y, 0, n - 1, distance));
+        while (count < maxVertices && !queue.isEmpty()) {
+            final Section section = queue.poll();
+            if (section.distance <= tolerance) {
+                break;
+            }
+            keep[section.split] = true;
+            count++;
+            if (section.split - section.start > 1) {
+                queue.add(createSection(x, y, section.start, section.split, distance));
+            }
+            if (section.end - section.split > 1) {
+                queue.add(createSection(x, y, section.split, section.end, distance));
+            }
+        }
+        final int[] indices = new int[count];
+        int index = 0;
+        for (int i = 0; i < n; i++) {
+            if (keep[i]) {
+                indices[index++] = i;
+            }
+        }
+        return indices;
+    }
+
+    private static Section createSection(final double[] x, final double[] y, final int start, final int end,
+                                         final double[] distance) {
+        final int split = SegmentDistance.farthestPoint(x, y, start, end, distance);
+        return new Section(start, end, split, distance[0]);
+    }
+
+    /**
+     * A section with at least one point between its ends, and its farthest point.
+     */
+    private static class Section {
+        private final int start;
+        private final int end;
+        private final int split;
+        private final double distance;
+
+        Section(final int start, final int end, final int split, final double distance) {
+            this.start = start;
+            this.end = end;
+            this.split = split;
+            this.distance = distance;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.exploringspatial.simplify;
+
+/**
+ * The purpose of this class is to thin a track in one pass before Douglas-Peucker sees it.
+ * A point is accepted only when it lies farther than the radius from the last accepted
+ * point, so runs of 1 Hz points a couple of meters apart, and the hundreds of identical
+ * points recorded while standing still, collapse to one point each. It costs one squared
+ * distance per point and keeps no history, so it can run while the file is decoded.
+ *
+ * Every rejected point is within the radius of an accepted one, so after Douglas-Peucker
+ * with tolerance t no point is farther than radius + t from the simplified line. A radius
+ * no larger than the tolerance keeps that within twice the tolerance. The caller should
+ * keep the last point of a track even when it is rejected, so the line still ends there.
+ *
+ * An instance is not thread safe and filters one track at a time.
+ *
+ * @author Steve Mitchell
+ */
+public class RadialDistanceFilter {
+    private final double radiusSquared;
+    private boolean started;
+    private double lastX;
+    private double lastY;
+
+    /**
+     * @param radius - Points within this distance of the last accepted point are rejected; 0
+     *               rejects only exact repeats.
+     */
+    public RadialDistanceFilter(final double radius) {
+        this.radiusSquared = radius * radius;
+    }
+
+    /**
+     * @param x - Longitude of the next point.
+     * @param y - Latitude of the next point.
+     * @return true when the point should be kept; always true for the first point.
+     */
+    public boolean accept(final double x, final double y) {
+        if (started) {
+            final double dx = x - lastX;
+            final double dy = y - lastY;
+            if (dx * dx + dy * dy <= radiusSquared) {
+                return false;
+            }
+        }
+        started = true;
+        lastX = x;
+        lastY = y;
+        return true;
+    }
+
+    /**
+     * The purpose of this method is to start a new track.
+     */
+    public void reset() {
+        started = false;
+    }
+}
@@ -0,0 +1,72 @@
+package com.exploringspatial.simplify;
+
+/**
+ * The purpose of this class is to measure the distance from a point to a line segment on
+ * plain doubles. The arithmetic is that of JTS CGAlgorithms.distancePointLine, step for
+ * step, so simplifiers built on it keep exactly the vertices DouglasPeuckerSimplifier keeps.
+ *
+ * @author Steve Mitchell
+ */
+public final class SegmentDistance {
+
+    private SegmentDistance() {
+    }
+
+    /**
+     * @param px - X of the point.
+     * @param py - Y of the point.
+     * @param ax - X of the segment start.
+     * @param ay - Y of the segment start.
+     * @param bx - X of the segment end.
+     * @param by - Y of the segment end.
+     * @return the distance from the point to the closest point of the segment.
+     */
+    public static double distance(final double px, final double py, final double ax, final double ay,
+                                  final double bx, final double by) {
+        if (ax == bx && ay == by) {
+            return pointDistance(px, py, ax, ay);
+        }
+        final double len2 = (bx - ax) * (bx - ax) + (by - ay) * (by - ay);
+        final double r = ((px - ax) * (bx - ax) + (py - ay) * (by - ay)) / len2;
+        if (r <= 0.0) {
+            return pointDistance(px, py, ax, ay);
+        }
+        if (r >= 1.0) {
+            return pointDistance(px, py, bx, by);
+        }
+        final double s = ((ay - py) * (bx - ax) - (ax - px) * (by - ay)) / len2;
+        return Math.abs(s) * Math.sqrt(len2);
+    }
+
+    /**
+     * The purpose of this method is to find the point of a section farthest from its chord,
+     * the Douglas-Peucker split point.
+     *
+     * @param x           - X of each point.
+     * @param y           - Y of each point.
+     * @param start       - Index of the section start.
+     * @param end         - Index of the section end.
+     * @param distanceOut - Receives the greatest distance in its first entry, -1 when the section has no interior.
+     * @return the index of the first point at the greatest distance.
+     */
+    public static int farthestPoint(final double[] x, final double[] y, final int start, final int end,
+                                    final double[] distanceOut) {
+        double maxDistance = -1.0;
+        int maxIndex = start;
+        for (int k = start + 1; k < end; k++) {
+            final double distance = distance(x[k], y[k], x[start], y[start], x[end], y[end]);
+            if (distance > maxDistance) {
+                maxDistance = distance;
+                maxIndex = k;
+            }
+        }
+        distanceOut[0] = maxDistance;
+        return maxIndex;
+    }
+
+    private static double pointDistance(final double px, final double py, final double qx, final double qy) {
+        final double dx = px - qx;
+        final double dy = py - qy;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+}
@@ -0,0 +1,23 @@
+package com.exploringspatial.simplify;
+
+/**
+ * The SimplifyEngine enum selects how GarminFitService runs Douglas-Peucker. Every engine
+ * keeps the same vertices; they differ only in speed.
+ *
+ * @author Steve Mitchell
+ */
+public enum SimplifyEngine {
+    /**
+     * JTS DouglasPeuckerSimplifier on the calling thread.
+     */
+    JTS,
+    /**
+     * ForkJoinDouglasPeucker, splitting long sections across the common ForkJoinPool.
+     */
+    FORK_JOIN,
+    /**
+     * IterativeDouglasPeucker on the calling thread, reading the points as primitives and
+     * reusing its buffers instead of building a LineString to simplify.
+     */
+    ITERATIVE
+}
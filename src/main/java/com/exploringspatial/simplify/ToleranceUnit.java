@@ -0,0 +1,18 @@
+package com.exploringspatial.simplify;
+
+/**
+ * The ToleranceUnit enum tells GarminFitService how to read its simplification tolerance.
+ *
+ * @author Steve Mitchell
+ */
+public enum ToleranceUnit {
+    /**
+     * Degrees of longitude and latitude, as stored in the track. A degree of longitude
+     * covers less ground the farther the track is from the equator.
+     */
+    DEGREES,
+    /**
+     * Meters on the ground. Each track is projected onto a local plane first, see LocalProjection.
+     */
+    METERS
+}
@@ -0,0 +1,154 @@
+package com.exploringspatial.simplify;
+
+import com.exploringspatial.domain.FitTrack;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+
+/**
+ * The purpose of this class is to run Douglas-Peucker over a track once and keep, for every
+ * vertex, the largest tolerance at which it survives. The polyline for any tolerance or
+ * map zoom level is then a single O(n) pass over the stored values instead of a new
+ * simplification.
+ *
+ * A vertex chosen to split a section survives at tolerance t when its distance from the
+ * section, and that of every split above it, is greater than t. Its significance is the
+ * smallest of those distances; the end points are always kept. getCoordinates(t) therefore
+ * returns exactly the vertices DouglasPeuckerSimplifier.simplify(line, t) keeps.
+ *
+ * @author Steve Mitchell
+ */
+public class TrackPyramid {
+    /**
+     * Degrees per pixel at zoom level 0 of a 256 pixel Web Mercator tile, at the equator.
+     */
+    public static final double ZOOM_0_TOLERANCE = 360D / 256D;
+    private final FitTrack track;
+    private final double[] significance;
+
+    /**
+     * @param track - The full resolution track; it must not change while the pyramid is in use.
+     */
+    public TrackPyramid(final FitTrack track) {
+        this.track = track;
+        this.significance = computeSignificance(track);
+    }
+
+    /**
+     * @param zoom - Web Mercator zoom level, 0 for the whole world in one tile.
+     * @return the tolerance in degrees of one pixel at that zoom level.
+     */
+    public static double toleranceForZoom(final int zoom) {
+        return ZOOM_0_TOLERANCE / Math.pow(2, zoom);
+    }
+
+    public FitTrack getTrack() {
+        return track;
+    }
+
+    public int size() {
+        return significance.length;
+    }
+
+    /**
+     * @param index - Vertex index in the track.
+     * @return the vertex survives at tolerances below this value; infinite for the end points.
+     */
+    public double getSignificance(final int index) {
+        return significance[index];
+    }
+
+    /**
+     * @param tolerance - Douglas-Peucker distance tolerance in degrees.
+     * @return the number of vertices kept at that tolerance.
+     */
+    public int countVertices(final double tolerance) {
+        int count = 0;
+        for (final double value : significance) {
+            if (value > tolerance) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param tolerance - Douglas-Peucker distance tolerance in degrees.
+     * @return the indices of the vertices kept at that tolerance, in track order.
+     */
+    public int[] getIndices(final double tolerance) {
+        final int[] indices = new int[countVertices(tolerance)];
+        int count = 0;
+        for (int i = 0; i < significance.length; i++) {
+            if (significance[i] > tolerance) {
+                indices[count++] = i;
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * @param tolerance - Douglas-Peucker distance tolerance in degrees.
+     * @return copies of the vertices kept at that tolerance, with the time as z like the track's sequence.
+     */
+    public Coordinate[] getCoordinates(final double tolerance) {
+        final CoordinateSequence sequence = track.toCoordinateSequence();
+        final int[] indices = getIndices(tolerance);
+        final Coordinate[] coordinates = new Coordinate[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            coordinates[i] = sequence.getCoordinateCopy(indices[i]);
+        }
+        return coordinates;
+    }
+
+    /**
+     * The purpose of this method is to walk the Douglas-Peucker splits at tolerance zero,
+     * with an explicit stack so long tracks cannot overflow the call stack.
+     */
+    private static double[] computeSignificance(final FitTrack track) {
+        final int n = track.size();
+        final double[] significance = new double[n];
+        if (n == 0) {
+            return significance;
+        }
+        significance[0] = Double.POSITIVE_INFINITY;
+        significance[n - 1] = Double.POSITIVE_INFINITY;
+        final double[] x = new double[n];
+        final double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = track.getLongitude(i);
+            y[i] = track.getLatitude(i);
+        }
+        final double[] distance = new double[1];
+        // Each entry is a section still to split and the significance of the split above it.
+        final int[] starts = new int[n];
+        final int[] ends = new int[n];
+        final double[] limits = new double[n];
+        int depth = 0;
+        starts[depth] = 0;
+        ends[depth] = n - 1;
+        limits[depth++] = Double.POSITIVE_INFINITY;
+        while (depth > 0) {
+            depth--;
+            final int start = starts[depth];
+            final int end = ends[depth];
+            final double limit = limits[depth];
+            if (start + 1 >= end) {
+                continue;
+            }
+            final int maxIndex = SegmentDistance.farthestPoint(x, y, start, end, distance);
+            if (distance[0] == 0D) {
+                // Every point of the section is on the segment, so all keep significance zero.
+                continue;
+            }
+            final double value = Math.min(distance[0], limit);
+            significance[maxIndex] = value;
+            starts[depth] = maxIndex;
+            ends[depth] = end;
+            limits[depth++] = value;
+            starts[depth] = start;
+            ends[depth] = maxIndex;
+            limits[depth++] = value;
+        }
+        return significance;
+    }
+}
@@ -0,0 +1,118 @@
+package com.exploringspatial.tcx;
+
+import com.exploringspatial.domain.FitActivity;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The TcxActivityIterator class reads the activities of a TCX file on demand. Each call
+ * to next parses one Activity element, either directly under Activities or as the
+ * FirstSport or a NextSport leg of a MultiSportSession, and leaves the reader just after
+ * it. Multi-sport legs are skipped once a plain activity has been returned.
+ *
+ * Created by TcxStreamParser.iterateTcxFile. Not thread safe.
+ *
+ * @author Steve Mitchell
+ */
+public class TcxActivityIterator implements Iterator<FitActivity>, Closeable {
+    private final TcxStreamParser parser;
+    private final XMLStreamReader reader;
+    // Local names of the open elements that can lead to an Activity.
+    private final Deque<String> path = new ArrayDeque<String>();
+    private boolean activitySeen;
+    private boolean closed;
+    private FitActivity nextActivity;
+
+    TcxActivityIterator(final TcxStreamParser parser, final XMLStreamReader reader) {
+        this.parser = parser;
+        this.reader = reader;
+        path.push("TrainingCenterDatabase");
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextActivity == null && !closed) {
+            try {
+                nextActivity = findNextActivity();
+            } catch (XMLStreamException e) {
+                close();
+                throw new IllegalStateException("Cannot parse TCX file", e);
+            }
+            if (nextActivity == null) {
+                close();
+            }
+        }
+        return nextActivity != null;
+    }
+
+    @Override
+    public FitActivity next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final FitActivity activity = nextActivity;
+        nextActivity = null;
+        return activity;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * The purpose of this method is to release the XML reader. The underlying stream is
+     * left open for its owner to close.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                // Nothing more to read either way.
+            }
+        }
+    }
+
+    /**
+     * @return the next activity, or null at the end of the TrainingCenterDatabase element.
+     */
+    private FitActivity findNextActivity() throws XMLStreamException {
+        while (!path.isEmpty()) {
+            if (!reader.hasNext()) {
+                throw new XMLStreamException("Unexpected end of document", reader.getLocation());
+            }
+            final int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                path.pop();
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                final String parent = path.peek();
+                if ("TrainingCenterDatabase".equals(parent) && TcxStreamParser.isTcx(reader, "Activities")) {
+                    path.push("Activities");
+                } else if ("Activities".equals(parent) && TcxStreamParser.isTcx(reader, "Activity")) {
+                    activitySeen = true;
+                    return parser.parseActivity(reader);
+                } else if ("Activities".equals(parent) && TcxStreamParser.isTcx(reader, "MultiSportSession") && !activitySeen) {
+                    path.push("MultiSportSession");
+                } else if ("MultiSportSession".equals(parent)
+                        && (TcxStreamParser.isTcx(reader, "FirstSport") || TcxStreamParser.isTcx(reader, "NextSport"))) {
+                    path.push("Sport");
+                } else if ("Sport".equals(parent) && TcxStreamParser.isTcx(reader, "Activity")) {
+                    return parser.parseActivity(reader);
+                } else {
+                    TcxStreamParser.skipElement(reader);
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -2,7 +2,6 @@ package com.exploringspatial.tcx;
 
 import com.exploringspatial.domain.FitActivity;
 import com.garmin.trainingcenter.*;
-import com.vividsolutions.jts.geom.Coordinate;
 import org.apache.log4j.Logger;
 
 import javax.xml.bind.JAXBContext;
@@ -12,26 +11,55 @@ import javax.xml.bind.Unmarshaller;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
  * Created by mitchellst on 1/7/15.
+ *
+ * The JAXBContext is created once per process, the first time a file is parsed, and
+ * Unmarshallers (which are not thread safe) are borrowed from a shared pool for each
+ * file, so one instance can be used from many threads at once.
  */
 public class TcxParser {
+    private static final String CONTEXT_PATH = "com.garmin.trainingcenter";
+    private static final BlockingQueue<Unmarshaller> UNMARSHALLERS =
+            new ArrayBlockingQueue<Unmarshaller>(Math.max(2, Runtime.getRuntime().availableProcessors() * 2));
+    private static volatile JAXBContext jaxbContext;
     private final Logger log = Logger.getLogger(TcxParser.class);
-    private Unmarshaller unmarshaller;
 
     public TcxParser() {
         super();
-        init();
     }
 
-    private void init() {
-        try {
-            JAXBContext jaxbContext = JAXBContext.newInstance("com.garmin.trainingcenter");
-            unmarshaller = jaxbContext.createUnmarshaller();
-        } catch (JAXBException e) {
-            e.printStackTrace();
+    /**
+     * The purpose of this method is to create the JAXBContext for the TCX classes on first use.
+     *
+     * @return the process wide context.
+     * @throws JAXBException when the context cannot be created.
+     */
+    public static JAXBContext getJaxbContext() throws JAXBException {
+        JAXBContext context = jaxbContext;
+        if (context == null) {
+            synchronized (TcxParser.class) {
+                context = jaxbContext;
+                if (context == null) {
+                    context = JAXBContext.newInstance(CONTEXT_PATH);
+                    jaxbContext = context;
+                }
+            }
         }
+        return context;
+    }
+
+    private static Unmarshaller borrowUnmarshaller() throws JAXBException {
+        final Unmarshaller unmarshaller = UNMARSHALLERS.poll();
+        return unmarshaller != null ? unmarshaller : getJaxbContext().createUnmarshaller();
+    }
+
+    private static void returnUnmarshaller(final Unmarshaller unmarshaller) {
+        // A full pool just lets the extra one be collected.
+        UNMARSHALLERS.offer(unmarshaller);
     }
 
     public List<FitActivity> parseTcxFile(final InputStream inputStream) {
@@ -44,7 +72,13 @@ public class TcxParser {
             ActivityListT activityList;
             TrainingCenterDatabaseT trainingCenterDatabaseT;
             try {
-                final JAXBElement<TrainingCenterDatabaseT> o = (JAXBElement<TrainingCenterDatabaseT>) unmarshaller.unmarshal(inputStream);
+                final Unmarshaller unmarshaller = borrowUnmarshaller();
+                final JAXBElement<TrainingCenterDatabaseT> o;
+                try {
+                    o = (JAXBElement<TrainingCenterDatabaseT>) unmarshaller.unmarshal(inputStream);
+                } finally {
+                    returnUnmarshaller(unmarshaller);
+                }
                 trainingCenterDatabaseT = o.getValue();
                 if (trainingCenterDatabaseT != null) {
                     activityList = trainingCenterDatabaseT.getActivities();
@@ -81,7 +115,6 @@ public class TcxParser {
         Long previousTime = null;
         List<FitActivity> activityPolylines = new ArrayList<FitActivity>();
         FitActivity activityPolyline;
-        Coordinate coordinate;
         activityPolyline = new FitActivity();
         activityPolylines.add(activityPolyline);
         activityPolyline.setSport(activity.getSport().name());
@@ -94,11 +127,10 @@ public class TcxParser {
                         if (track.getTrackpoint() != null) {
                             for (final TrackpointT point : track.getTrackpoint()) {
                                 if (point.getPosition() != null && (point.getPosition().getLatitudeDegrees() != 0D && point.getPosition().getLongitudeDegrees() != 0D)) {
-                                    coordinate = new Coordinate();
-                                    coordinate.y = point.getPosition().getLatitudeDegrees();
-                                    coordinate.x = point.getPosition().getLongitudeDegrees();
-                                    coordinate.z = point.getTime().toGregorianCalendar().getTime().getTime();
-                                    activityPolyline.addCoordinate(coordinate);
+                                    activityPolyline.getTrack().add(
+                                            point.getPosition().getLongitudeDegrees(),
+                                            point.getPosition().getLatitudeDegrees(),
+                                            XsdDateTime.toMillis(point.getTime()));
                                 }
                             }
                         }
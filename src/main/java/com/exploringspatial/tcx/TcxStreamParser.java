@@ -0,0 +1,227 @@
+package com.exploringspatial.tcx;
+
+import com.exploringspatial.domain.FitActivity;
+import com.garmin.trainingcenter.SportT;
+import org.apache.log4j.Logger;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
+/**
+ * The purpose of this class is to read activities from a TCX file with StAX instead of
+ * unmarshalling the whole TrainingCenterDatabase tree. Only the Activity, Lap, Track and
+ * Trackpoint elements are walked; positions and times go straight into the activity's
+ * FitTrack and everything else (heart rate, extensions, workouts, courses) is skipped
+ * unread, so memory stays proportional to the track being built.
+ *
+ * The results match TcxParser for schema valid files: the same sport names, totals
+ * (including the float accumulation and scaling of lap distance) and the same track points,
+ * skipping those with a zero latitude or longitude. MultiSportSession activities are only
+ * returned when the file has no plain Activity elements; the schema puts those first.
+ *
+ * An instance can be shared between threads.
+ *
+ * @author Steve Mitchell
+ */
+public class TcxStreamParser {
+    public static final String TCX_NAMESPACE = "http://www.garmin.com/xmlschemas/TrainingCenterDatabase/v2";
+    private final Logger log = Logger.getLogger(TcxStreamParser.class);
+    private final XMLInputFactory inputFactory;
+
+    public TcxStreamParser() {
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    }
+
+    /**
+     * The purpose of this method is to read every activity in a TCX file.
+     *
+     * @param inputStream - InputStream from a TCX file.
+     * @return the activities in document order, or an empty list if the file cannot be parsed.
+     */
+    public List<FitActivity> parseTcxFile(final InputStream inputStream) {
+        final List<FitActivity> activities = new ArrayList<FitActivity>();
+        try {
+            final TcxActivityIterator iterator = iterateTcxFile(inputStream);
+            try {
+                while (iterator.hasNext()) {
+                    activities.add(iterator.next());
+                }
+            } finally {
+                iterator.close();
+            }
+        } catch (XMLStreamException e) {
+            log.error(e, e);
+            activities.clear();
+        } catch (IllegalStateException e) {
+            log.error(e, e);
+            activities.clear();
+        } catch (IllegalArgumentException e) {
+            log.error(e, e);
+            activities.clear();
+        }
+        return activities;
+    }
+
+    /**
+     * The purpose of this method is to read the activities of a TCX file one at a time, so
+     * the first can be written before the rest of the file has been read and only one is
+     * resident at once. Multi-sport legs are returned like any other activity.
+     *
+     * The iterator throws IllegalStateException if the file turns out to be malformed part
+     * way through. Close it if it is abandoned before the end; the stream is not closed.
+     *
+     * @param inputStream - InputStream from a TCX file.
+     * @return an iterator over the activities in document order.
+     * @throws XMLStreamException when the file does not start with a TrainingCenterDatabase.
+     */
+    public TcxActivityIterator iterateTcxFile(final InputStream inputStream) throws XMLStreamException {
+        if (inputStream == null) {
+            throw new IllegalArgumentException("inputStream must not be null");
+        }
+        final XMLStreamReader reader = inputFactory.createXMLStreamReader(inputStream);
+        reader.nextTag();
+        if (!isTcx(reader, "TrainingCenterDatabase")) {
+            reader.close();
+            throw new XMLStreamException("Expected {" + TCX_NAMESPACE + "}TrainingCenterDatabase but found "
+                    + reader.getName(), reader.getLocation());
+        }
+        return new TcxActivityIterator(this, reader);
+    }
+
+    /**
+     * The purpose of this method is to wrap iterateTcxFile for StreamSupport.stream.
+     *
+     * @param inputStream - InputStream from a TCX file.
+     * @return an ordered spliterator over the activities.
+     * @throws XMLStreamException when the file does not start with a TrainingCenterDatabase.
+     */
+    public Spliterator<FitActivity> spliterator(final InputStream inputStream) throws XMLStreamException {
+        return Spliterators.spliteratorUnknownSize(iterateTcxFile(inputStream), Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    FitActivity parseActivity(final XMLStreamReader reader) throws XMLStreamException {
+        final FitActivity activity = new FitActivity();
+        final String sport = reader.getAttributeValue(null, "Sport");
+        activity.setSport(sport == null ? null : SportT.fromValue(sport.trim()).name());
+        float distance = 0;
+        double timeInSeconds = 0;
+        while (nextChild(reader)) {
+            if (isTcx(reader, "Lap")) {
+                double lapDistance = 0;
+                while (nextChild(reader)) {
+                    if (isTcx(reader, "TotalTimeSeconds")) {
+                        timeInSeconds += parseDouble(reader.getElementText());
+                    } else if (isTcx(reader, "DistanceMeters")) {
+                        lapDistance = parseDouble(reader.getElementText());
+                    } else if (isTcx(reader, "Track")) {
+                        parseTrack(reader, activity);
+                    } else {
+                        skipElement(reader);
+                    }
+                }
+                distance += lapDistance;
+            } else {
+                skipElement(reader);
+            }
+        }
+        activity.setTotalSeconds(timeInSeconds);
+        activity.setTotalMeters(distance / 100D);
+        return activity;
+    }
+
+    private void parseTrack(final XMLStreamReader reader, final FitActivity activity) throws XMLStreamException {
+        while (nextChild(reader)) {
+            if (!isTcx(reader, "Trackpoint")) {
+                skipElement(reader);
+                continue;
+            }
+            String time = null;
+            boolean hasPosition = false;
+            double latitude = 0D;
+            double longitude = 0D;
+            while (nextChild(reader)) {
+                if (isTcx(reader, "Time")) {
+                    time = reader.getElementText();
+                } else if (isTcx(reader, "Position")) {
+                    hasPosition = true;
+                    while (nextChild(reader)) {
+                        if (isTcx(reader, "LatitudeDegrees")) {
+                            latitude = parseDouble(reader.getElementText());
+                        } else if (isTcx(reader, "LongitudeDegrees")) {
+                            longitude = parseDouble(reader.getElementText());
+                        } else {
+                            skipElement(reader);
+                        }
+                    }
+                } else {
+                    skipElement(reader);
+                }
+            }
+            if (hasPosition && latitude != 0D && longitude != 0D) {
+                if (time == null) {
+                    activity.getTrack().add(longitude, latitude);
+                } else {
+                    activity.getTrack().add(longitude, latitude, XsdDateTime.parseMillis(time));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return an xsd:double, which unlike Double.parseDouble spells infinity INF.
+     */
+    private static double parseDouble(final String text) {
+        final String value = text.trim();
+        if ("INF".equals(value)) {
+            return Double.POSITIVE_INFINITY;
+        } else if ("-INF".equals(value)) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        return Double.parseDouble(value);
+    }
+
+    static boolean isTcx(final XMLStreamReader reader, final String localName) {
+        return localName.equals(reader.getLocalName()) && TCX_NAMESPACE.equals(reader.getNamespaceURI());
+    }
+
+    /**
+     * The purpose of this method is to move to the next child element of the current element.
+     *
+     * @return true positioned on the child's start tag, or false on the parent's end tag.
+     */
+    static boolean nextChild(final XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+        throw new XMLStreamException("Unexpected end of document", reader.getLocation());
+    }
+
+    /**
+     * The purpose of this method is to skip the current element and everything inside it.
+     */
+    static void skipElement(final XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+}
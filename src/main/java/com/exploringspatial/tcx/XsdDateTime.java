@@ -0,0 +1,178 @@
+package com.exploringspatial.tcx;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeConstants;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
+
+/**
+ * The purpose of this class is to turn xsd:dateTime values into epoch milliseconds without
+ * going through XMLGregorianCalendar, GregorianCalendar and Date for every track point.
+ *
+ * The forms Garmin writes (yyyy-MM-ddTHH:mm:ss with optional fractional seconds and a Z or
+ * +/-hh:mm offset) are read straight from the characters. Anything else, such as a time
+ * without an offset (which depends on the default time zone), hour 24 or a year before 1600,
+ * falls back to XMLGregorianCalendar.toGregorianCalendar(). Either way the result is the
+ * same, including fractional seconds being truncated to milliseconds.
+ *
+ * @author Steve Mitchell
+ */
+public final class XsdDateTime {
+    private static final long MILLIS_PER_DAY = 86400000L;
+    private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    private XsdDateTime() {
+    }
+
+    /**
+     * The purpose of this method is to parse an xsd:dateTime.
+     *
+     * @param text - The lexical value, surrounding whitespace allowed.
+     * @return milliseconds since 1970-01-01T00:00:00Z.
+     * @throws IllegalArgumentException when the text is not an xsd:dateTime.
+     */
+    public static long parseMillis(final CharSequence text) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        // yyyy-MM-ddTHH:mm:ss plus at least one character of zone.
+        if (end - start < 20
+                || text.charAt(start + 4) != '-' || text.charAt(start + 7) != '-' || text.charAt(start + 10) != 'T'
+                || text.charAt(start + 13) != ':' || text.charAt(start + 16) != ':') {
+            return parseSlowly(text);
+        }
+        final int year = digits(text, start, 4);
+        final int month = digits(text, start + 5, 2);
+        final int day = digits(text, start + 8, 2);
+        final int hour = digits(text, start + 11, 2);
+        final int minute = digits(text, start + 14, 2);
+        final int second = digits(text, start + 17, 2);
+        if (year < 1600 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return parseSlowly(text);
+        }
+        int i = start + 19;
+        int millis = 0;
+        if (text.charAt(i) == '.') {
+            i++;
+            final int fractionStart = i;
+            while (i < end && isDigit(text.charAt(i))) {
+                if (i - fractionStart < 3) {
+                    millis = millis * 10 + (text.charAt(i) - '0');
+                }
+                i++;
+            }
+            if (i == fractionStart) {
+                return parseSlowly(text);
+            }
+            for (int scale = i - fractionStart; scale < 3; scale++) {
+                millis *= 10;
+            }
+        }
+        final int offsetMinutes;
+        if (i == end - 1 && text.charAt(i) == 'Z') {
+            offsetMinutes = 0;
+        } else if (i == end - 6 && (text.charAt(i) == '+' || text.charAt(i) == '-') && text.charAt(i + 3) == ':') {
+            final int offsetHours = digits(text, i + 1, 2);
+            final int offsetMinute = digits(text, i + 4, 2);
+            if (offsetHours < 0 || offsetMinute < 0 || offsetMinute > 59
+                    || offsetHours > 14 || (offsetHours == 14 && offsetMinute != 0)) {
+                return parseSlowly(text);
+            }
+            offsetMinutes = (text.charAt(i) == '-' ? -1 : 1) * (offsetHours * 60 + offsetMinute);
+        } else {
+            return parseSlowly(text);
+        }
+        return toMillis(year, month, day, hour, minute, second, millis, offsetMinutes);
+    }
+
+    /**
+     * The purpose of this method is to convert a calendar JAXB has already built, skipping
+     * the GregorianCalendar and Date.
+     *
+     * @param calendar - An xsd:dateTime value.
+     * @return milliseconds since 1970-01-01T00:00:00Z.
+     */
+    public static long toMillis(final XMLGregorianCalendar calendar) {
+        final int year = calendar.getYear();
+        final int timezone = calendar.getTimezone();
+        if (year == DatatypeConstants.FIELD_UNDEFINED || year < 1600 || calendar.getEon() != null
+                || timezone == DatatypeConstants.FIELD_UNDEFINED
+                || calendar.getHour() == DatatypeConstants.FIELD_UNDEFINED
+                || calendar.getMinute() == DatatypeConstants.FIELD_UNDEFINED
+                || calendar.getSecond() == DatatypeConstants.FIELD_UNDEFINED) {
+            return calendar.toGregorianCalendar().getTime().getTime();
+        }
+        final int millis = calendar.getMillisecond();
+        return toMillis(year, calendar.getMonth(), calendar.getDay(), calendar.getHour(), calendar.getMinute(),
+                calendar.getSecond(), millis == DatatypeConstants.FIELD_UNDEFINED ? 0 : millis, timezone);
+    }
+
+    private static long toMillis(final int year, final int month, final int day, final int hour, final int minute,
+                                 final int second, final int millis, final int offsetMinutes) {
+        final long seconds = ((long) hour * 60 + minute - offsetMinutes) * 60 + second;
+        return daysSinceEpoch(year, month, day) * MILLIS_PER_DAY + seconds * 1000L + millis;
+    }
+
+    /**
+     * @return the days from 1970-01-01 to a proleptic Gregorian date (Howard Hinnant's days_from_civil).
+     */
+    private static long daysSinceEpoch(final int year, final int month, final int day) {
+        final int y = month <= 2 ? year - 1 : year;
+        final int era = (y >= 0 ? y : y - 399) / 400;
+        final int yearOfEra = y - era * 400;
+        final int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468L;
+    }
+
+    private static int daysInMonth(final int year, final int month) {
+        if (month == 2 && (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0))) {
+            return 29;
+        }
+        return DAYS_IN_MONTH[month - 1];
+    }
+
+    /**
+     * @return the value of count decimal digits, or -1 if any character is not a digit.
+     */
+    private static int digits(final CharSequence text, final int offset, final int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            final char c = text.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(final char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static long parseSlowly(final CharSequence text) {
+        return Holder.DATATYPE_FACTORY.newXMLGregorianCalendar(text.toString().trim()).toGregorianCalendar().getTime().getTime();
+    }
+
+    /**
+     * Creates the DatatypeFactory the first time a value needs the slow path.
+     */
+    private static final class Holder {
+        private static final DatatypeFactory DATATYPE_FACTORY;
+
+        static {
+            try {
+                DATATYPE_FACTORY = DatatypeFactory.newInstance();
+            } catch (DatatypeConfigurationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+    }
+}
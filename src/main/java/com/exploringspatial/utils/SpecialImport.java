@@ -1,13 +1,24 @@
 package com.exploringspatial.utils;
 
+import com.exploringspatial.batch.ActivityConverter;
+import com.exploringspatial.batch.BatchConverter;
+import com.exploringspatial.batch.BatchResult;
+import com.exploringspatial.batch.ConversionPipeline;
+import com.exploringspatial.batch.FeatureCollections;
+import com.exploringspatial.batch.FeatureSequenceFiles;
+import com.exploringspatial.batch.ImportCheckpoint;
+import com.exploringspatial.batch.ImportManifest;
 import com.exploringspatial.domain.FitActivity;
+import com.exploringspatial.geojson.GeoJsonWriter;
 import com.exploringspatial.service.GarminFitService;
-import com.exploringspatial.tcx.TcxParser;
 import org.opengis.referencing.FactoryException;
 
 import java.io.*;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Created by mitchellst on 1/7/15.
@@ -16,93 +27,312 @@ public class SpecialImport {
     public static final char MAGIC_FIT_IDENTIFIER[] = {'.', 'F', 'I', 'T'};
 
     private List<FitActivity> fitActivities;
-    private TcxParser tcxParser;
-    private GarminFitService garminFitService;
+    private ActivityConverter activityConverter;
+    private int parallelism = 1;
+    private boolean pipeline = false;
+    private boolean incremental = true;
+    private boolean resume = false;
+    private int vertexBudget = 0;
+    private int coordinatePrecision = GeoJsonWriter.DEFAULT_DECIMALS;
+    private int polylinePrecision = 0;
+    private boolean collections = false;
+    private boolean sequence = false;
+    private boolean recordSeparator = true;
+    private long rotationSize = 0;
     private final File importDir = new File("/Users/mitchellst/Desktop/activities/files");
     private final File outputDir = new File("/Users/mitchellst/Desktop/activities/activity");
+    private final File manifestFile = new File("/Users/mitchellst/Desktop/activities/manifest.tsv");
+    private final File checkpointFile = new File("/Users/mitchellst/Desktop/activities/checkpoint.txt");
+    private final File collectionDir = new File("/Users/mitchellst/Desktop/activities/collections");
+    private final File sequenceDir = new File("/Users/mitchellst/Desktop/activities/sequence");
 
+    /**
+     * @param args - Optional number of worker threads; defaults to one (sequential).
+     *             Follow it with "pipeline" to run the staged pipeline instead, "resume" to
+     *             continue an interrupted import, "full" to ignore the manifest and
+     *             "budget=N" to write at most N vertices per activity, "precision=N" to
+     *             keep N decimals per ordinate, "polyline=N" to add an encoded polyline
+     *             property with N decimals, "collections" to also write one
+     *             FeatureCollection per year, "sequence" to also write RFC 8142 GeoJSON
+     *             text sequences, or "lines" for newline delimited GeoJSON, and
+     *             "rotate=N" to start a new sequence file every N megabytes.
+     */
     public static void main(String[] args) {
         SpecialImport specialImport = new SpecialImport();
+        if (args.length > 0) {
+            specialImport.setParallelism(Integer.parseInt(args[0]));
+        }
+        for (int i = 1; i < args.length; i++) {
+            if ("pipeline".equalsIgnoreCase(args[i])) {
+                specialImport.setPipeline(true);
+            } else if ("resume".equalsIgnoreCase(args[i])) {
+                specialImport.setResume(true);
+            } else if ("full".equalsIgnoreCase(args[i])) {
+                specialImport.setIncremental(false);
+            } else if (args[i].startsWith("budget=")) {
+                specialImport.setVertexBudget(Integer.parseInt(args[i].substring("budget=".length())));
+            } else if (args[i].startsWith("precision=")) {
+                specialImport.setCoordinatePrecision(Integer.parseInt(args[i].substring("precision=".length())));
+            } else if (args[i].startsWith("polyline=")) {
+                specialImport.setPolylinePrecision(Integer.parseInt(args[i].substring("polyline=".length())));
+            } else if ("collections".equalsIgnoreCase(args[i])) {
+                specialImport.setCollections(true);
+            } else if ("sequence".equalsIgnoreCase(args[i])) {
+                specialImport.setSequence(true);
+            } else if ("lines".equalsIgnoreCase(args[i])) {
+                specialImport.setSequence(true);
+                specialImport.setRecordSeparator(false);
+            } else if (args[i].startsWith("rotate=")) {
+                specialImport.setRotationSize(Long.parseLong(args[i].substring("rotate=".length())) * 1024L * 1024L);
+            }
+        }
         specialImport.run();
     }
 
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(final int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public boolean isPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * @param pipeline - True to convert through the staged pipeline, sizing its decode
+     *                 and simplify stages by the parallelism.
+     */
+    public void setPipeline(final boolean pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * @param incremental - When true (the default) activities recorded as up to date in the
+     *                    manifest are skipped; when false everything is converted again.
+     */
+    public void setIncremental(final boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public boolean isResume() {
+        return resume;
+    }
+
+    /**
+     * @param resume - When true activities recorded in the checkpoint by an interrupted run are
+     *               not converted again; when false (the default) the checkpoint is started afresh.
+     */
+    public void setResume(final boolean resume) {
+        this.resume = resume;
+    }
+
+    public int getVertexBudget() {
+        return vertexBudget;
+    }
+
+    /**
+     * @param vertexBudget - Most vertices written per activity, or 0 (the default) for no limit.
+     */
+    public void setVertexBudget(final int vertexBudget) {
+        this.vertexBudget = vertexBudget;
+    }
+
+    public int getCoordinatePrecision() {
+        return coordinatePrecision;
+    }
+
+    /**
+     * @param coordinatePrecision - Decimals kept in each ordinate; defaults to 4.
+     */
+    public void setCoordinatePrecision(final int coordinatePrecision) {
+        this.coordinatePrecision = coordinatePrecision;
+    }
+
+    public int getPolylinePrecision() {
+        return polylinePrecision;
+    }
+
+    /**
+     * @param polylinePrecision - Decimals of the encoded polyline property, 5 or 6, or 0 (the default) for none.
+     */
+    public void setPolylinePrecision(final int polylinePrecision) {
+        this.polylinePrecision = polylinePrecision;
+    }
+
+    public boolean isCollections() {
+        return collections;
+    }
+
+    /**
+     * @param collections - True to also write every activity into a FeatureCollection per
+     *                    year; every activity is then converted, whatever the manifest
+     *                    and checkpoint say.
+     */
+    public void setCollections(final boolean collections) {
+        this.collections = collections;
+    }
+
+    public boolean isSequence() {
+        return sequence;
+    }
+
+    /**
+     * @param sequence - True to also write every activity as a line of a GeoJSON text
+     *                 sequence; every activity is then converted, whatever the manifest
+     *                 and checkpoint say.
+     */
+    public void setSequence(final boolean sequence) {
+        this.sequence = sequence;
+    }
+
+    public boolean isRecordSeparator() {
+        return recordSeparator;
+    }
+
+    /**
+     * @param recordSeparator - True (the default) for RFC 8142 text sequences, false for
+     *                        newline delimited GeoJSON.
+     */
+    public void setRecordSeparator(final boolean recordSeparator) {
+        this.recordSeparator = recordSeparator;
+    }
+
+    public long getRotationSize() {
+        return rotationSize;
+    }
+
+    /**
+     * @param rotationSize - Bytes after which a sequence file is finished and the next
+     *                     one started, or 0 (the default) for a single file.
+     */
+    public void setRotationSize(final long rotationSize) {
+        this.rotationSize = rotationSize;
+    }
+
     public void run() {
         fitActivities = new ArrayList<FitActivity>();
-        tcxParser = new TcxParser();
-        garminFitService = new GarminFitService();
+        final GarminFitService garminFitService = new GarminFitService();
+        garminFitService.setVertexBudget(vertexBudget);
+        garminFitService.setCoordinatePrecision(coordinatePrecision);
+        garminFitService.setPolylinePrecision(polylinePrecision);
+        activityConverter = new ActivityConverter(garminFitService, importDir, outputDir);
         try {
+            final ImportManifest importManifest = incremental ? ImportManifest.load(manifestFile) : new ImportManifest();
+            activityConverter.setImportManifest(importManifest);
+            if (!resume || collections || sequence) {
+                Files.deleteIfExists(checkpointFile.toPath());
+            }
             loadActivityIds();
-            processFiles();
+            removeFinished(ImportCheckpoint.load(checkpointFile));
+            final ImportCheckpoint importCheckpoint = new ImportCheckpoint(checkpointFile);
+            importCheckpoint.setImportManifest(importManifest, manifestFile);
+            activityConverter.setImportCheckpoint(importCheckpoint);
+            FeatureCollections featureCollections = null;
+            if (collections) {
+                Files.createDirectories(collectionDir.toPath());
+                featureCollections = new FeatureCollections(garminFitService, collectionDir, true);
+                activityConverter.setFeatureCollections(featureCollections);
+            }
+            FeatureSequenceFiles featureSequenceFiles = null;
+            if (sequence) {
+                Files.createDirectories(sequenceDir.toPath());
+                featureSequenceFiles = new FeatureSequenceFiles(garminFitService, sequenceDir, recordSeparator, rotationSize);
+                activityConverter.setFeatureSequenceFiles(featureSequenceFiles);
+            }
+            try {
+                if (pipeline) {
+                    System.out.println(processFilesInPipeline(parallelism));
+                } else if (parallelism > 1) {
+                    System.out.println(processFilesInParallel(parallelism));
+                } else {
+                    processFiles();
+                }
+            } finally {
+                importCheckpoint.close();
+                importManifest.save(manifestFile);
+                if (featureCollections != null) {
+                    System.out.println(featureCollections.getCounts());
+                    featureCollections.close();
+                }
+                if (featureSequenceFiles != null) {
+                    featureSequenceFiles.close();
+                    System.out.println(featureSequenceFiles.getCount() + " activities in " + featureSequenceFiles.getFiles().size() + " sequence files");
+                }
+            }
+            // The whole catalog has been through; the next run starts from the beginning.
+            Files.deleteIfExists(checkpointFile.toPath());
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
-    public void processFiles() throws IOException, FactoryException {
-        final String RUNNING = "RUNNING";
-        File activityFile;
-        FitActivity parsedActivity;
-        List<FitActivity> parsedActivities;
+    /**
+     * The purpose of this method is to drop catalog entries a previous run already finished.
+     *
+     * @param finished - Activity ids from the checkpoint.
+     */
+    public void removeFinished(final Set<Long> finished) {
+        if (finished.isEmpty()) {
+            return;
+        }
+        final Iterator<FitActivity> iterator = fitActivities.iterator();
+        while (iterator.hasNext()) {
+            if (finished.contains(iterator.next().getActivityId())) {
+                iterator.remove();
+            }
+        }
+        System.out.println("Resuming after " + finished.size() + " finished activities, " + fitActivities.size() + " to go");
+    }
 
+    public void processFiles() throws IOException, FactoryException {
         for (final FitActivity fitActivity : fitActivities) {
-            parsedActivity = null;
-            InputStream in = null;
             try {
-
-                activityFile = new File(importDir, ("" + fitActivity.getActivityId()).concat(".fit"));
-                if (activityFile.exists()) {
-                    in = new FileInputStream(activityFile);
-                    parsedActivity = garminFitService.decodeFitFile(in);
-                    if (parsedActivity != null) {
-                        fitActivity.setSport(parsedActivity.getSport());
-                        fitActivity.setPolyline(parsedActivity.getPolyline());
-                        storeActivity(fitActivity);
-                    }
-                } else {
-
-                    activityFile = new File(importDir, ("" + fitActivity.getActivityId()).concat(".tcx"));
-                    if (activityFile.exists()) {
-                        in = new FileInputStream(activityFile);
-                        parsedActivities = tcxParser.parseTcxFile(in);
-                        for (FitActivity next: parsedActivities) {
-                            if (RUNNING.equals(next.getSport())) {
-                                parsedActivity = next;
-                            }
-                        }
-                    }
-                }
-                if (parsedActivity != null &&
-                        fitActivity.getActivityId() != null) {
-                    fitActivity.setSport(parsedActivity.getSport());
-                    fitActivity.setPolyline(parsedActivity.getPolyline());
-                    storeActivity(fitActivity);
-                }
-
-
-            } finally {
-                if (in != null) {
-                    in.close();
-                }
+                activityConverter.convert(fitActivity);
+            } catch (RuntimeException e) {
+                // One bad activity does not stop the import.
+                e.printStackTrace();
             }
         }
     }
 
-    private void storeActivity(final FitActivity fitActivity) throws IOException, FactoryException {
-        OutputStream out = null;
+    /**
+     * The purpose of this method is to convert the catalog on several threads at once.
+     *
+     * @param parallelism - Number of worker threads.
+     * @return counts and throughput for the run.
+     * @throws InterruptedException if interrupted while waiting for the workers.
+     */
+    public BatchResult processFilesInParallel(final int parallelism) throws InterruptedException {
+        final BatchConverter batchConverter = new BatchConverter(activityConverter, parallelism);
         try {
-            final File file = new File(outputDir, fitActivity.getActivityId().toString());
-            out = new BufferedOutputStream(new FileOutputStream(file));
-            garminFitService.writeFeatureGeoJSON(fitActivity, out);
-        } catch( RuntimeException e) {
-            e.printStackTrace();
-        }
-        finally {
-            if (out != null) {
-                out.close();
-            }
+            return batchConverter.convert(fitActivities);
+        } finally {
+            batchConverter.shutdown();
         }
     }
 
+    /**
+     * The purpose of this method is to convert the catalog through separate read, decode,
+     * simplify and write stages.
+     *
+     * @param parallelism - Number of decode and of simplify threads.
+     * @return counts and throughput for the run.
+     * @throws InterruptedException if interrupted while waiting for the stages.
+     */
+    public BatchResult processFilesInPipeline(final int parallelism) throws InterruptedException {
+        final ConversionPipeline conversionPipeline = new ConversionPipeline(activityConverter);
+        conversionPipeline.setDecoders(parallelism);
+        conversionPipeline.setSimplifiers(parallelism);
+        return conversionPipeline.convert(fitActivities);
+    }
+
     public void loadActivityIds() throws IOException {
 
         final File catalog = new File("/Users/mitchellst/Desktop/activities/activities.csv");
@@ -0,0 +1,64 @@
+package com.exploringspatial;
+
+import com.exploringspatial.domain.FitActivity;
+import com.exploringspatial.service.GarminFitService;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+
+/**
+ * Loads the sample activity and the recorded GeoJSON fixtures from the test resources.
+ */
+public final class TestFixtures {
+    public static final String SAMPLE_FIT = "/155155867.fit";
+
+    private TestFixtures() {
+    }
+
+    /**
+     * @param garminFitService - Decodes the sample with its current settings.
+     * @return the 155155867.fit sample.
+     */
+    public static FitActivity decodeSample(final GarminFitService garminFitService) throws IOException {
+        final InputStream in = TestFixtures.class.getResourceAsStream(SAMPLE_FIT);
+        try {
+            return garminFitService.decodeFitFile(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @param target - File the sample is copied to; it must not exist yet.
+     */
+    public static void copySample(final File target) throws IOException {
+        final InputStream in = TestFixtures.class.getResourceAsStream(SAMPLE_FIT);
+        try {
+            Files.copy(in, target.toPath());
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @param name - Resource name, e.g. "/feature.json".
+     * @return the fixture's lines joined without line breaks.
+     */
+    public static String readFixture(final String name) throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(TestFixtures.class.getResourceAsStream(name), "UTF-8"));
+        try {
+            final StringBuilder buf = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                buf.append(line);
+            }
+            return buf.toString();
+        } finally {
+            reader.close();
+        }
+    }
+}
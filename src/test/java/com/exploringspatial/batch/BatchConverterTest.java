@@ -0,0 +1,240 @@
+package com.exploringspatial.batch;
+
+import com.exploringspatial.domain.FitActivity;
+import com.exploringspatial.service.GarminFitService;
+import com.vividsolutions.jts.geom.Geometry;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opengis.referencing.FactoryException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static com.exploringspatial.TestFixtures.copySample;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Converts copies of the sample FIT file through the batch engine.
+ */
+public class BatchConverterTest {
+    private static final int ACTIVITY_COUNT = 8;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File importDir;
+    private File outputDir;
+    private List<FitActivity> entries;
+
+    @Before
+    public void setUp() throws IOException {
+        importDir = folder.newFolder("files");
+        outputDir = folder.newFolder("activity");
+        entries = new ArrayList<FitActivity>();
+        for (long activityId = 1; activityId <= ACTIVITY_COUNT; activityId++) {
+            copySample(new File(importDir, activityId + ".fit"));
+            final FitActivity entry = new FitActivity();
+            entry.setActivityId(activityId);
+            entry.setName("Activity " + activityId);
+            entries.add(entry);
+        }
+        final FitActivity missing = new FitActivity();
+        missing.setActivityId(99L);
+        entries.add(missing);
+    }
+
+    @Test
+    public void testParallelMatchesSequential() throws Exception {
+        final ActivityConverter activityConverter = new ActivityConverter(new GarminFitService(), importDir, outputDir);
+        final File sequentialDir = folder.newFolder("sequential");
+        final ActivityConverter sequentialConverter = new ActivityConverter(new GarminFitService(), importDir, sequentialDir);
+        for (final FitActivity entry : entries) {
+            sequentialConverter.convert(entry);
+        }
+
+        final BatchConverter batchConverter = new BatchConverter(activityConverter, 4);
+        final BatchResult result;
+        try {
+            result = batchConverter.convert(entries);
+        } finally {
+            batchConverter.shutdown();
+        }
+        assertEquals(ACTIVITY_COUNT + 1, result.getCompleted());
+        assertEquals(ACTIVITY_COUNT, result.getConverted());
+        assertEquals(1, result.getMissing());
+        assertEquals(0, result.getFailed());
+        assertTrue(result.getPoints() > 0);
+        for (long activityId = 1; activityId <= ACTIVITY_COUNT; activityId++) {
+            final byte[] expected = Files.readAllBytes(new File(sequentialDir, String.valueOf(activityId)).toPath());
+            final byte[] actual = Files.readAllBytes(new File(outputDir, String.valueOf(activityId)).toPath());
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testCollectionsByYear() throws Exception {
+        for (final FitActivity entry : entries) {
+            entry.setStartTime(entry.getActivityId() % 2 == 0 ? "2014-03-01T14:00Z" : "2015-03-01T14:00Z");
+        }
+        entries.get(0).setStartTime(null);
+        final GarminFitService garminFitService = new GarminFitService();
+        final ActivityConverter activityConverter = new ActivityConverter(garminFitService, importDir, outputDir);
+        final File collectionDir = folder.newFolder("collections");
+        final FeatureCollections featureCollections = new FeatureCollections(garminFitService, collectionDir, true);
+        activityConverter.setFeatureCollections(featureCollections);
+        final BatchConverter batchConverter = new BatchConverter(activityConverter, 4);
+        try {
+            batchConverter.convert(entries);
+        } finally {
+            batchConverter.shutdown();
+        }
+        final Map<String, Integer> counts = featureCollections.getCounts();
+        featureCollections.close();
+        assertEquals(Integer.valueOf(1), counts.get(FeatureCollections.UNKNOWN_YEAR));
+        assertEquals(Integer.valueOf(ACTIVITY_COUNT / 2), counts.get("2014"));
+        assertEquals(Integer.valueOf(ACTIVITY_COUNT / 2 - 1), counts.get("2015"));
+        assertEquals(3, collectionDir.list().length);
+        final String collection = new String(Files.readAllBytes(new File(collectionDir, "2014.geojson").toPath()), "UTF-8");
+        assertTrue(collection.startsWith("{\"type\":\"FeatureCollection\",\"features\":[{\"type\":\"Feature\""));
+        assertTrue(collection.endsWith("}]}"));
+        for (long activityId = 2; activityId <= ACTIVITY_COUNT; activityId += 2) {
+            final String feature = new String(Files.readAllBytes(new File(outputDir, String.valueOf(activityId)).toPath()), "UTF-8");
+            final String geometry = feature.substring(0, feature.indexOf(",\"properties\""));
+            assertTrue(collection.contains(geometry));
+            assertTrue(collection.contains("\"id\":\"" + activityId + "\""));
+        }
+    }
+
+    @Test
+    public void testSequenceRotation() throws Exception {
+        final GarminFitService garminFitService = new GarminFitService();
+        final ActivityConverter activityConverter = new ActivityConverter(garminFitService, importDir, outputDir);
+        final File sequenceDir = folder.newFolder("sequence");
+        // Each feature is about 22 KB, so a 40 KB rotation puts two in each file.
+        final FeatureSequenceFiles featureSequenceFiles = new FeatureSequenceFiles(garminFitService, sequenceDir, true, 40 * 1024);
+        activityConverter.setFeatureSequenceFiles(featureSequenceFiles);
+        final ConversionPipeline pipeline = new ConversionPipeline(activityConverter);
+        pipeline.convert(entries);
+        featureSequenceFiles.close();
+        assertEquals(ACTIVITY_COUNT, featureSequenceFiles.getCount());
+        final List<File> files = featureSequenceFiles.getFiles();
+        assertEquals(ACTIVITY_COUNT / 2, files.size());
+        assertEquals("activities-00000.geojsons", files.get(0).getName());
+        assertEquals(files.size(), sequenceDir.list().length);
+        int features = 0;
+        for (final File file : files) {
+            final String text = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+            for (final String line : text.split("\n")) {
+                assertTrue(line.startsWith("\u001E{\"type\":\"Feature\""));
+                assertTrue(line.endsWith("}"));
+                features++;
+            }
+        }
+        assertEquals(ACTIVITY_COUNT, features);
+    }
+
+    @Test
+    public void testPipelineMatchesSequential() throws Exception {
+        final File sequentialDir = folder.newFolder("sequential");
+        final ActivityConverter sequentialConverter = new ActivityConverter(new GarminFitService(), importDir, sequentialDir);
+        for (final FitActivity entry : entries) {
+            sequentialConverter.convert(entry);
+        }
+
+        final ConversionPipeline pipeline = new ConversionPipeline(new ActivityConverter(new GarminFitService(), importDir, outputDir));
+        pipeline.setDecoders(3);
+        pipeline.setSimplifiers(2);
+        pipeline.setQueueCapacity(2);
+        final BatchResult result = pipeline.convert(entries);
+        assertEquals(ACTIVITY_COUNT + 1, result.getCompleted());
+        assertEquals(ACTIVITY_COUNT, result.getConverted());
+        assertEquals(1, result.getMissing());
+        assertEquals(0, result.getFailed());
+        assertEquals(4, pipeline.getStages().size());
+        assertEquals(ACTIVITY_COUNT + 1, pipeline.getStages().get(0).getProcessed());
+        assertEquals(ACTIVITY_COUNT, pipeline.getStages().get(3).getProcessed());
+        for (long activityId = 1; activityId <= ACTIVITY_COUNT; activityId++) {
+            final byte[] expected = Files.readAllBytes(new File(sequentialDir, String.valueOf(activityId)).toPath());
+            final byte[] actual = Files.readAllBytes(new File(outputDir, String.valueOf(activityId)).toPath());
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testWriteFailureIsCounted() throws Exception {
+        final GarminFitService garminFitService = new GarminFitService() {
+            @Override
+            public void writeFeatureGeoJSON(final FitActivity fitActivity, final Geometry geometry, final OutputStream out)
+                    throws FactoryException, IOException {
+                if (fitActivity.getActivityId() == 3L) {
+                    throw new IllegalStateException("Cannot write activity 3");
+                }
+                super.writeFeatureGeoJSON(fitActivity, geometry, out);
+            }
+        };
+        final BatchConverter batchConverter = new BatchConverter(new ActivityConverter(garminFitService, importDir, outputDir), 4);
+        final BatchResult batchResult;
+        try {
+            batchResult = batchConverter.convert(entries);
+        } finally {
+            batchConverter.shutdown();
+        }
+        final BatchResult pipelineResult = new ConversionPipeline(new ActivityConverter(garminFitService, importDir, outputDir)).convert(entries);
+        for (final BatchResult result : new BatchResult[]{batchResult, pipelineResult}) {
+            assertEquals(ACTIVITY_COUNT - 1, result.getConverted());
+            assertEquals(1, result.getFailed());
+            assertEquals(Collections.singletonList(3L), result.getFailedActivityIds());
+        }
+        assertFalse(new File(outputDir, "3").exists());
+        assertFalse(new File(outputDir, "3.tmp").exists());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPipelineNeedsAReader() {
+        new ConversionPipeline(new ActivityConverter(new GarminFitService(), importDir, outputDir)).setReaders(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPipelineNeedsAWriter() {
+        new ConversionPipeline(new ActivityConverter(new GarminFitService(), importDir, outputDir)).setWriters(0);
+    }
+
+    @Test
+    public void testInterruptedPipelineStopsItsThreads() throws Exception {
+        final ConversionPipeline pipeline = new ConversionPipeline(new ActivityConverter(new GarminFitService(), importDir, outputDir));
+        Thread.currentThread().interrupt();
+        try {
+            pipeline.convert(entries);
+            fail("convert should have been interrupted");
+        } catch (InterruptedException e) {
+            // Expected.
+        }
+        final long deadline = System.currentTimeMillis() + 10000L;
+        while (pipelineThreads() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertEquals(0, pipelineThreads());
+    }
+
+    private static int pipelineThreads() {
+        int count = 0;
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("pipeline-") && thread.isAlive()) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
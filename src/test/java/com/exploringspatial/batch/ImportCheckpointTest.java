@@ -0,0 +1,105 @@
+package com.exploringspatial.batch;
+
+import com.exploringspatial.domain.FitActivity;
+import com.exploringspatial.service.GarminFitService;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+
+import static com.exploringspatial.TestFixtures.copySample;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Records finished activities and reloads them as a resumed import would.
+ */
+public class ImportCheckpointTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testTornLineIsDiscarded() throws Exception {
+        final File file = new File(folder.getRoot(), "checkpoint.txt");
+        ImportCheckpoint checkpoint = new ImportCheckpoint(file, 2);
+        checkpoint.record(1L);
+        checkpoint.record(2L);
+        checkpoint.record(3L);
+        // Only the first batch has been forced to disk.
+        assertEquals(2, ImportCheckpoint.load(file).size());
+        checkpoint.close();
+        assertEquals(3, ImportCheckpoint.load(file).size());
+
+        // A crash in the middle of a write leaves a partial id behind.
+        Files.write(file.toPath(), "45".getBytes(StandardCharsets.US_ASCII), StandardOpenOption.APPEND);
+        assertEquals(3, ImportCheckpoint.load(file).size());
+        checkpoint = new ImportCheckpoint(file);
+        checkpoint.record(6L);
+        checkpoint.close();
+        final Set<Long> finished = ImportCheckpoint.load(file);
+        assertEquals(4, finished.size());
+        assertTrue(finished.contains(6L));
+        assertFalse(finished.contains(456L));
+    }
+
+    @Test
+    public void testConverterRecordsFinishedActivities() throws Exception {
+        final File importDir = folder.newFolder("files");
+        final File outputDir = folder.newFolder("activity");
+        copySample(new File(importDir, "1.fit"));
+        final File file = new File(folder.getRoot(), "checkpoint.txt");
+        final ImportCheckpoint checkpoint = new ImportCheckpoint(file);
+        final ActivityConverter activityConverter = new ActivityConverter(new GarminFitService(), importDir, outputDir);
+        activityConverter.setImportCheckpoint(checkpoint);
+        final FitActivity converted = new FitActivity();
+        converted.setActivityId(1L);
+        final FitActivity missing = new FitActivity();
+        missing.setActivityId(2L);
+        assertTrue(activityConverter.convert(converted) > 0);
+        assertEquals(ActivityConverter.NO_INPUT, activityConverter.convert(missing));
+        checkpoint.close();
+
+        final Set<Long> finished = ImportCheckpoint.load(file);
+        assertEquals(2, finished.size());
+        assertTrue(finished.contains(1L));
+        assertTrue(finished.contains(2L));
+        final String[] written = outputDir.list();
+        assertEquals(1, written.length);
+        assertEquals("1", written[0]);
+    }
+
+    @Test
+    public void testManifestIsSavedWithEachBatch() throws Exception {
+        final File importDir = folder.newFolder("files");
+        final File outputDir = folder.newFolder("activity");
+        copySample(new File(importDir, "1.fit"));
+        copySample(new File(importDir, "2.fit"));
+        final File file = new File(folder.getRoot(), "checkpoint.txt");
+        final File manifestFile = new File(folder.getRoot(), "manifest.tsv");
+        final ImportManifest importManifest = new ImportManifest();
+        final ImportCheckpoint checkpoint = new ImportCheckpoint(file, 2);
+        checkpoint.setImportManifest(importManifest, manifestFile);
+        final ActivityConverter activityConverter = new ActivityConverter(new GarminFitService(), importDir, outputDir);
+        activityConverter.setImportManifest(importManifest);
+        activityConverter.setImportCheckpoint(checkpoint);
+        for (long activityId = 1; activityId <= 2; activityId++) {
+            final FitActivity entry = new FitActivity();
+            entry.setActivityId(activityId);
+            activityConverter.convert(entry);
+        }
+        // The batch is on disk without closing, as after a crash, and so are its manifest records.
+        assertEquals(2, ImportCheckpoint.load(file).size());
+        final ImportManifest saved = ImportManifest.load(manifestFile);
+        assertEquals(2, saved.size());
+        assertEquals(importManifest.get(1L).getHash(), saved.get(1L).getHash());
+        assertFalse(new File(folder.getRoot(), "manifest.tsv.tmp").exists());
+        checkpoint.close();
+    }
+}
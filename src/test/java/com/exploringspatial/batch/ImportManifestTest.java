@@ -0,0 +1,139 @@
+package com.exploringspatial.batch;
+
+import com.exploringspatial.domain.FitActivity;
+import com.exploringspatial.geojson.GeoJsonEngine;
+import com.exploringspatial.service.GarminFitService;
+import com.exploringspatial.simplify.StreamingDouglasPeucker;
+import com.exploringspatial.simplify.ToleranceUnit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.exploringspatial.TestFixtures.copySample;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Re-imports copies of the sample FIT file against a saved manifest.
+ */
+public class ImportManifestTest {
+    private static final int ACTIVITY_COUNT = 4;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File importDir;
+    private File outputDir;
+    private File manifestFile;
+    private List<FitActivity> entries;
+
+    @Before
+    public void setUp() throws IOException {
+        importDir = folder.newFolder("files");
+        outputDir = folder.newFolder("activity");
+        manifestFile = new File(folder.getRoot(), "manifest.tsv");
+        entries = new ArrayList<FitActivity>();
+        for (long activityId = 1; activityId <= ACTIVITY_COUNT; activityId++) {
+            copySample(new File(importDir, activityId + ".fit"));
+            final FitActivity entry = new FitActivity();
+            entry.setActivityId(activityId);
+            entry.setName("Activity " + activityId);
+            entries.add(entry);
+        }
+    }
+
+    @Test
+    public void testUnchangedInputsAreSkipped() throws Exception {
+        BatchResult result = importWith(new GarminFitService());
+        assertEquals(ACTIVITY_COUNT, result.getConverted());
+        assertEquals(ACTIVITY_COUNT, ImportManifest.load(manifestFile).size());
+
+        result = importWith(new GarminFitService());
+        assertEquals(0, result.getConverted());
+        assertEquals(ACTIVITY_COUNT, result.getUnchanged());
+
+        // Touched but identical content is recognised by its hash.
+        final File touched = new File(importDir, "1.fit");
+        assertTrue(touched.setLastModified(touched.lastModified() - 60000L));
+        result = importWith(new GarminFitService());
+        assertEquals(ACTIVITY_COUNT, result.getUnchanged());
+        assertEquals(touched.lastModified(), ImportManifest.load(manifestFile).get(1L).getLastModified());
+
+        // A renamed activity and a deleted output are written again.
+        entries.get(1).setName("Renamed");
+        assertTrue(new File(outputDir, "3").delete());
+        result = importWith(new GarminFitService());
+        assertEquals(2, result.getConverted());
+        assertEquals(ACTIVITY_COUNT - 2, result.getUnchanged());
+
+        // A new tolerance invalidates everything.
+        final GarminFitService garminFitService = new GarminFitService();
+        garminFitService.setTolerance(GarminFitService.DEFAULT_TOLERANCE * 2);
+        result = importWith(garminFitService);
+        assertEquals(ACTIVITY_COUNT, result.getConverted());
+
+        // So does the same tolerance in meters.
+        garminFitService.setToleranceUnit(ToleranceUnit.METERS);
+        result = importWith(garminFitService);
+        assertEquals(ACTIVITY_COUNT, result.getConverted());
+
+        // And a vertex budget.
+        garminFitService.setVertexBudget(100);
+        result = importWith(garminFitService);
+        assertEquals(ACTIVITY_COUNT, result.getConverted());
+
+        // And a coordinate precision.
+        garminFitService.setCoordinatePrecision(6);
+        result = importWith(garminFitService);
+        assertEquals(ACTIVITY_COUNT, result.getConverted());
+
+        // And an encoded polyline property.
+        garminFitService.setPolylinePrecision(5);
+        result = importWith(garminFitService);
+        assertEquals(ACTIVITY_COUNT, result.getConverted());
+
+        // And simplifying while decoding, which keeps different vertices.
+        garminFitService.setStreamingWindow(StreamingDouglasPeucker.DEFAULT_WINDOW);
+        result = importWith(garminFitService);
+        assertEquals(ACTIVITY_COUNT, result.getConverted());
+
+        // And a distance pre-filter.
+        garminFitService.setPrefilterRadius(2D);
+        result = importWith(garminFitService);
+        assertEquals(ACTIVITY_COUNT, result.getConverted());
+
+        // And the GeoJSON engine.
+        garminFitService.setGeoJsonEngine(GeoJsonEngine.GEOTOOLS);
+        result = importWith(garminFitService);
+        assertEquals(ACTIVITY_COUNT, result.getConverted());
+        result = importWith(garminFitService);
+        assertEquals(ACTIVITY_COUNT, result.getUnchanged());
+    }
+
+    @Test(expected = IOException.class)
+    public void testMalformedLine() throws Exception {
+        Files.write(manifestFile.toPath(), "1\t1.fit\t10\t20\tabc\tdef\n".getBytes(StandardCharsets.UTF_8));
+        ImportManifest.load(manifestFile);
+    }
+
+    private BatchResult importWith(final GarminFitService garminFitService) throws Exception {
+        final ActivityConverter activityConverter = new ActivityConverter(garminFitService, importDir, outputDir);
+        final ImportManifest importManifest = ImportManifest.load(manifestFile);
+        activityConverter.setImportManifest(importManifest);
+        final BatchConverter batchConverter = new BatchConverter(activityConverter, 2);
+        try {
+            return batchConverter.convert(entries);
+        } finally {
+            batchConverter.shutdown();
+            importManifest.save(manifestFile);
+        }
+    }
+}
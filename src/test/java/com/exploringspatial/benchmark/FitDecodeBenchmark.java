@@ -0,0 +1,89 @@
+package com.exploringspatial.benchmark;
+
+import com.exploringspatial.domain.FitActivity;
+import com.exploringspatial.fit.FitDecodeEngine;
+import com.exploringspatial.service.GarminFitService;
+import com.garmin.fit.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * The purpose of this class is to compare the FIT decode paths on a large synthetic
+ * activity: the SDK reading a FileInputStream (the original path), the native decoder
+ * reading the same stream, and the native decoder reading a memory mapped file.
+ *
+ * Run the main method from the IDE or with the test classpath, optionally passing
+ * the number of records to generate (default 1,000,000, about 28 hours at 1 Hz).
+ *
+ * @author Steve Mitchell
+ */
+public class FitDecodeBenchmark {
+    private static final int ITERATIONS = 5;
+
+    public static void main(final String[] args) throws IOException {
+        final int records = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        final File file = File.createTempFile("synthetic", ".fit");
+        file.deleteOnExit();
+        writeSyntheticActivity(file, records);
+        System.out.println("Synthetic file: " + records + " records, " + file.length() + " bytes");
+
+        final GarminFitService garminFitService = new GarminFitService();
+        for (int i = 0; i < ITERATIONS; i++) {
+            garminFitService.setDecodeEngine(FitDecodeEngine.SDK);
+            long start = System.nanoTime();
+            FitActivity fitActivity = garminFitService.decodeFitFile(new FileInputStream(file));
+            report("sdk stream", start, fitActivity);
+
+            garminFitService.setDecodeEngine(FitDecodeEngine.NATIVE);
+            start = System.nanoTime();
+            fitActivity = garminFitService.decodeFitFile(new FileInputStream(file));
+            report("native stream", start, fitActivity);
+
+            start = System.nanoTime();
+            fitActivity = garminFitService.decodeFitFile(file.toPath());
+            report("native mapped", start, fitActivity);
+        }
+    }
+
+    private static void report(final String label, final long start, final FitActivity fitActivity) {
+        final long millis = (System.nanoTime() - start) / 1000000L;
+        System.out.println(String.format("%-14s %6d ms %8d points", label, millis, fitActivity.getPolyline().size()));
+    }
+
+    /**
+     * The purpose of this method is to write an activity like a watch that logs GPS, heart rate,
+     * cadence, power and speed every second, so the projection has something to skip.
+     */
+    private static void writeSyntheticActivity(final File file, final int records) {
+        final FileEncoder encoder = new FileEncoder(file);
+        final long start = 700000000L;
+        final FileIdMesg fileIdMesg = new FileIdMesg();
+        fileIdMesg.setType(com.garmin.fit.File.ACTIVITY);
+        fileIdMesg.setManufacturer(Manufacturer.GARMIN);
+        fileIdMesg.setTimeCreated(new DateTime(start));
+        encoder.write(fileIdMesg);
+        final RecordMesg recordMesg = new RecordMesg();
+        for (int i = 0; i < records; i++) {
+            recordMesg.setTimestamp(new DateTime(start + i));
+            recordMesg.setPositionLat(414500000 + (int) (20000 * Math.sin(i / 500D)));
+            recordMesg.setPositionLong(-1100000000 + i * 3);
+            recordMesg.setAltitude(100F + (i % 200));
+            recordMesg.setHeartRate((short) (120 + i % 40));
+            recordMesg.setCadence((short) (85 + i % 10));
+            recordMesg.setPower(200 + i % 50);
+            recordMesg.setSpeed(3.2F);
+            recordMesg.setDistance(i * 3.2F);
+            encoder.write(recordMesg);
+        }
+        final SessionMesg sessionMesg = new SessionMesg();
+        sessionMesg.setTimestamp(new DateTime(start + records));
+        sessionMesg.setStartTime(new DateTime(start));
+        sessionMesg.setSport(Sport.RUNNING);
+        sessionMesg.setTotalTimerTime((float) records);
+        sessionMesg.setTotalDistance(records * 3.2F);
+        encoder.write(sessionMesg);
+        encoder.close();
+    }
+}
@@ -0,0 +1,129 @@
+package com.exploringspatial.benchmark;
+
+import com.exploringspatial.domain.FitActivity;
+import com.exploringspatial.domain.FitTrack;
+import com.exploringspatial.service.GarminFitService;
+import com.exploringspatial.simplify.LocalProjection;
+import com.exploringspatial.simplify.RadialDistanceFilter;
+import com.vividsolutions.jts.geom.Geometry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * The purpose of this class is to show what the radial distance pre-filter saves on the
+ * 155155867.fit sample. For each radius it times decoding and Douglas-Peucker separately
+ * and reports the points decoded and the vertices kept. The sample was recorded with
+ * smart recording, a point every few meters and no stationary runs, so it gains little;
+ * the same measurement follows on a synthetic 1 Hz run with stops, the case the filter is for.
+ *
+ * Run the main method from the IDE or with the test classpath, optionally passing the
+ * number of repetitions per measurement (default 200).
+ *
+ * @author Steve Mitchell
+ */
+public class PrefilterBenchmark {
+    private static final int ITERATIONS = 5;
+    private static final double[] RADII = {0D, Double.MIN_VALUE, GarminFitService.DEFAULT_TOLERANCE / 2D,
+            GarminFitService.DEFAULT_TOLERANCE, GarminFitService.DEFAULT_TOLERANCE * 2D, GarminFitService.DEFAULT_TOLERANCE * 5D};
+
+    public static void main(final String[] args) throws IOException {
+        final int repetitions = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        final ByteBuffer buffer = readSample();
+        final GarminFitService garminFitService = new GarminFitService();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (final double radius : RADII) {
+                garminFitService.setPrefilterRadius(radius);
+                long start = System.nanoTime();
+                FitActivity fitActivity = null;
+                for (int r = 0; r < repetitions; r++) {
+                    fitActivity = garminFitService.decodeFitFile(buffer);
+                }
+                final long decodeNanos = (System.nanoTime() - start) / repetitions;
+                final FitTrack track = fitActivity.getTrack();
+
+                start = System.nanoTime();
+                Geometry geometry = null;
+                for (int r = 0; r < repetitions; r++) {
+                    geometry = garminFitService.simplifyLineString(track.toCoordinateSequence());
+                }
+                final long simplifyNanos = (System.nanoTime() - start) / repetitions;
+                report("sample", "decode", radius, decodeNanos, track.size(), simplifyNanos, geometry.getNumPoints());
+            }
+        }
+        garminFitService.setPrefilterRadius(0D);
+        final FitTrack run = createRun();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (final double radius : RADII) {
+                long start = System.nanoTime();
+                FitTrack track = run;
+                for (int r = 0; r < repetitions && radius > 0; r++) {
+                    track = filter(run, radius);
+                }
+                final long filterNanos = (System.nanoTime() - start) / repetitions;
+
+                start = System.nanoTime();
+                Geometry geometry = null;
+                for (int r = 0; r < repetitions; r++) {
+                    geometry = garminFitService.simplifyLineString(track.toCoordinateSequence());
+                }
+                final long simplifyNanos = (System.nanoTime() - start) / repetitions;
+                report("1 Hz run", "filter", radius, filterNanos, track.size(), simplifyNanos, geometry.getNumPoints());
+            }
+        }
+    }
+
+    private static void report(final String label, final String stage, final double radius, final long stageNanos,
+                               final int points, final long simplifyNanos, final int vertices) {
+        System.out.println(String.format("%-8s radius %-8.1e %s %6d us %6d points   simplify %6d us %5d vertices",
+                label, radius, stage, stageNanos / 1000L, points, simplifyNanos / 1000L, vertices));
+    }
+
+    private static FitTrack filter(final FitTrack run, final double radius) {
+        final RadialDistanceFilter filter = new RadialDistanceFilter(radius);
+        final FitTrack track = new FitTrack(run.size());
+        for (int i = 0; i < run.size(); i++) {
+            if (filter.accept(run.getLongitude(i), run.getLatitude(i)) || i == run.size() - 1) {
+                track.add(run.getLongitude(i), run.getLatitude(i));
+            }
+        }
+        return track;
+    }
+
+    /**
+     * @return an hour at 1 Hz, 2.5 m per second with GPS noise, stopping for a minute every ten.
+     */
+    private static FitTrack createRun() {
+        final Random random = new Random(1);
+        final FitTrack track = new FitTrack();
+        double lon = -94.7;
+        double lat = 38.9;
+        double heading = 0D;
+        for (int second = 0; second < 3600; second++) {
+            if (second % 600 >= 60) {
+                heading += random.nextGaussian() * 0.05;
+                lon += Math.cos(heading) * 2.5 / (LocalProjection.METERS_PER_DEGREE * Math.cos(Math.toRadians(lat)));
+                lat += Math.sin(heading) * 2.5 / LocalProjection.METERS_PER_DEGREE;
+            }
+            track.add(lon + random.nextGaussian() * 0.3 / LocalProjection.METERS_PER_DEGREE,
+                    lat + random.nextGaussian() * 0.3 / LocalProjection.METERS_PER_DEGREE);
+        }
+        return track;
+    }
+
+    private static ByteBuffer readSample() throws IOException {
+        final InputStream in = PrefilterBenchmark.class.getResourceAsStream("/155155867.fit");
+        try {
+            final byte[] bytes = new byte[in.available()];
+            int offset = 0;
+            while (offset < bytes.length) {
+                offset += in.read(bytes, offset, bytes.length - offset);
+            }
+            return ByteBuffer.wrap(bytes);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.exploringspatial.benchmark;
+
+import com.exploringspatial.tcx.XsdDateTime;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+
+/**
+ * The purpose of this class is to compare XsdDateTime with the chain TcxParser used for
+ * every track point: XMLGregorianCalendar, toGregorianCalendar(), getTime(), getTime().
+ *
+ * Run the main method from the IDE or with the test classpath, optionally passing
+ * the number of timestamps per iteration (default 1,000,000).
+ *
+ * @author Steve Mitchell
+ */
+public class TimestampParseBenchmark {
+    private static final int ITERATIONS = 5;
+
+    public static void main(final String[] args) throws DatatypeConfigurationException {
+        final int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        final String[] values = new String[count];
+        for (int i = 0; i < count; i++) {
+            final int seconds = i % 86400;
+            values[i] = String.format("2015-01-%02dT%02d:%02d:%02d%s", 1 + (i / 86400) % 28,
+                    seconds / 3600, (seconds / 60) % 60, seconds % 60, i % 4 == 0 ? ".250Z" : "Z");
+        }
+        final DatatypeFactory datatypeFactory = DatatypeFactory.newInstance();
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            long checksum = 0;
+            for (final String value : values) {
+                checksum += datatypeFactory.newXMLGregorianCalendar(value).toGregorianCalendar().getTime().getTime();
+            }
+            report("calendar chain", start, count, checksum);
+
+            start = System.nanoTime();
+            checksum = 0;
+            for (final String value : values) {
+                checksum += XsdDateTime.parseMillis(value);
+            }
+            report("XsdDateTime", start, count, checksum);
+        }
+    }
+
+    private static void report(final String label, final long start, final int count, final long checksum) {
+        final long nanos = System.nanoTime() - start;
+        System.out.println(String.format("%-15s %6d ms %7.1f ns/value (checksum %d)",
+                label, nanos / 1000000L, nanos / (double) count, checksum));
+    }
+}
@@ -0,0 +1,67 @@
+package com.exploringspatial.geojson;
+
+import com.exploringspatial.domain.FitActivity;
+import com.exploringspatial.service.GarminFitService;
+import com.vividsolutions.jts.geom.Coordinate;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.exploringspatial.TestFixtures.decodeSample;
+import static com.exploringspatial.TestFixtures.readFixture;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Streams several activities into one FeatureCollection.
+ */
+public class FeatureCollectionWriterTest {
+
+    @Test
+    public void testEmptyCollection() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final FeatureCollectionWriter collection = new FeatureCollectionWriter(out);
+        collection.close();
+        collection.close();
+        assertEquals("{\"type\":\"FeatureCollection\",\"features\":[]}", out.toString("UTF-8"));
+        assertEquals(0, collection.getCount());
+    }
+
+    @Test
+    public void testFeaturesMatchFixture() throws IOException {
+        final GarminFitService garminFitService = new GarminFitService();
+        final List<FitActivity> fitActivities = new ArrayList<FitActivity>();
+        for (long activityId = 155155867L; activityId < 155155870L; activityId++) {
+            final FitActivity fitActivity = decodeSample(garminFitService);
+            fitActivity.setActivityId(activityId);
+            fitActivity.setName("2012 Little Rock Marathon");
+            fitActivities.add(fitActivity);
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(3, garminFitService.writeFeatureCollectionGeoJSON(fitActivities, out));
+
+        // Each feature is the single feature fixture with its own activity id, which is also its id.
+        final String feature = readFixture("/feature.json");
+        final StringBuilder expected = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+        for (int i = 0; i < fitActivities.size(); i++) {
+            if (i > 0) {
+                expected.append(',');
+            }
+            final Long activityId = fitActivities.get(i).getActivityId();
+            expected.append(feature.replace("\"activityId\":155155867", "\"activityId\":" + activityId)
+                    .replace("\"id\":\"0\"}", "\"id\":\"" + activityId + "\"}"));
+        }
+        expected.append("]}");
+        assertEquals(expected.toString(), out.toString("UTF-8"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWriteAfterClose() throws IOException {
+        final FeatureCollectionWriter collection = new FeatureCollectionWriter(new ByteArrayOutputStream());
+        collection.close();
+        collection.writeFeature(new FitActivity(), new GarminFitService().simplifyLineString(new Coordinate[0]));
+    }
+}
@@ -0,0 +1,69 @@
+package com.exploringspatial.geojson;
+
+import com.exploringspatial.domain.FitActivity;
+import com.exploringspatial.service.GarminFitService;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.exploringspatial.TestFixtures.decodeSample;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Writes activities as GeoJSON text sequences.
+ */
+public class FeatureSequenceWriterTest {
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+
+    @Test
+    public void testRecordSeparatorFraming() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final FeatureSequenceWriter sequence = new FeatureSequenceWriter(out);
+        final Geometry line = geometryFactory.createLineString(new Coordinate[]{new Coordinate(1, 2), new Coordinate(3, 4)});
+        final FitActivity fitActivity = new FitActivity();
+        fitActivity.setSport("RUNNING\nfast");
+        sequence.writeFeature(fitActivity, line);
+        fitActivity.setActivityId(7L);
+        sequence.writeFeature(fitActivity, line);
+        sequence.close();
+        final String feature = "{\"type\":\"Feature\",\"geometry\":{\"type\":\"LineString\",\"coordinates\":[[1.0,2.0],[3.0,4.0]]},"
+                + "\"properties\":{%s\"sport\":\"RUNNING\\nfast\",\"minLat\":2.0,\"minLon\":1.0,\"maxLat\":4.0,\"maxLon\":3.0},\"id\":\"%s\"}";
+        assertEquals("\u001E" + String.format(feature, "", "0") + "\n\u001E" + String.format(feature, "\"activityId\":7,", "7") + "\n",
+                out.toString("UTF-8"));
+        assertEquals(out.size(), sequence.getSize());
+        assertEquals(2, sequence.getCount());
+    }
+
+    @Test
+    public void testLinesMatchCollection() throws IOException {
+        final GarminFitService garminFitService = new GarminFitService();
+        final List<FitActivity> fitActivities = new ArrayList<FitActivity>();
+        for (long activityId = 1; activityId <= 3; activityId++) {
+            final FitActivity fitActivity = decodeSample(garminFitService);
+            fitActivity.setActivityId(activityId);
+            fitActivities.add(fitActivity);
+        }
+        final ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        assertEquals(3, garminFitService.writeFeatureSequenceGeoJSON(fitActivities, lines, false));
+        final ByteArrayOutputStream collection = new ByteArrayOutputStream();
+        garminFitService.writeFeatureCollectionGeoJSON(fitActivities, collection);
+
+        final String text = lines.toString("UTF-8");
+        assertTrue(text.endsWith("\n"));
+        final String[] features = text.split("\n");
+        assertEquals(3, features.length);
+        final StringBuilder joined = new StringBuilder();
+        for (final String feature : features) {
+            assertTrue(feature.startsWith("{\"type\":\"Feature\""));
+            joined.append(joined.length() == 0 ? "" : ",").append(feature);
+        }
+        assertEquals("{\"type\":\"FeatureCollection\",\"features\":[" + joined + "]}", collection.toString("UTF-8"));
+    }
+}
@@ -0,0 +1,138 @@
+package com.exploringspatial.geojson;
+
+import com.exploringspatial.domain.FitActivity;
+import com.exploringspatial.service.GarminFitService;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static com.exploringspatial.TestFixtures.decodeSample;
+import static com.exploringspatial.TestFixtures.readFixture;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the streaming writer with the fixtures recorded from GeoTools.
+ */
+public class GeoJsonWriterTest {
+
+    @Test
+    public void testLineStringMatchesFixture() throws IOException {
+        final GarminFitService garminFitService = new GarminFitService();
+        final FitActivity fitActivity = decodeSample(garminFitService);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        garminFitService.writeLinestringGeoJSON(fitActivity.getPolyline().toArray(new Coordinate[fitActivity.getPolyline().size()]), out);
+        assertEquals(readFixture("/linestring.json"), out.toString("UTF-8"));
+    }
+
+    @Test
+    public void testFeatureMatchesFixture() throws Exception {
+        final GarminFitService garminFitService = new GarminFitService();
+        final FitActivity fitActivity = decodeSample(garminFitService);
+        fitActivity.setActivityId(155155867L);
+        fitActivity.setName("2012 Little Rock Marathon");
+        // Written twice to check the buffer is reset between activities.
+        for (int i = 0; i < 2; i++) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            garminFitService.writeFeatureGeoJSON(fitActivity, out);
+            assertEquals(readFixture("/feature.json"), out.toString("UTF-8"));
+        }
+    }
+
+    @Test
+    public void testEscaping() throws IOException {
+        final FitActivity fitActivity = new FitActivity();
+        fitActivity.setSport("a/b \"c\"\t\u00e9\u2013\ud83c\udfc3");
+        final GeoJsonWriter writer = new GeoJsonWriter();
+        final GeometryFactory geometryFactory = new GeometryFactory();
+        writer.writeFeature(fitActivity, geometryFactory.createLineString(new Coordinate[]{
+                new Coordinate(1.00004, -2.5, 7D), new Coordinate(0.00015, 3D)}), "x");
+        assertEquals("{\"type\":\"Feature\",\"geometry\":{\"type\":\"LineString\",\"coordinates\":[[1.0,-2.5,7.0],[1.0E-4,3.0]]},"
+                        + "\"properties\":{\"sport\":\"a\\/b \\\"c\\\"\\t\u00e9\\u2013\ud83c\udfc3\",\"minLat\":-2.5,\"minLon\":1.5E-4,"
+                        + "\"maxLat\":3.0,\"maxLon\":1.00004},\"id\":\"x\"}",
+                new String(writer.toByteArray(), "UTF-8"));
+    }
+
+    @Test
+    public void testNonFiniteProperties() throws IOException {
+        final FitActivity fitActivity = new FitActivity();
+        fitActivity.setTotalMeters(Double.NaN);
+        fitActivity.setTotalSeconds(Double.POSITIVE_INFINITY);
+        final GeoJsonWriter writer = new GeoJsonWriter();
+        final GeometryFactory geometryFactory = new GeometryFactory();
+        writer.writeFeature(fitActivity, geometryFactory.createLineString(new Coordinate[]{
+                new Coordinate(1D, 2D), new Coordinate(3D, 4D)}), "x");
+        assertEquals("{\"type\":\"Feature\",\"geometry\":{\"type\":\"LineString\",\"coordinates\":[[1.0,2.0],[3.0,4.0]]},"
+                        + "\"properties\":{\"totalMeters\":null,\"totalSeconds\":null,\"minLat\":2.0,\"minLon\":1.0,"
+                        + "\"maxLat\":4.0,\"maxLon\":3.0},\"id\":\"x\"}",
+                new String(writer.toByteArray(), "UTF-8"));
+    }
+
+    @Test
+    public void testFixedDecimalsMatchDoubleToString() throws IOException {
+        final Random random = new Random(9);
+        final GeometryFactory geometryFactory = new GeometryFactory();
+        for (int decimals = 0; decimals <= 7; decimals++) {
+            final GeoJsonWriter writer = new GeoJsonWriter(decimals);
+            final double scale = Math.pow(10, decimals);
+            for (int i = 0; i < 2000; i++) {
+                final double x = (random.nextDouble() - 0.5) * 360D;
+                final double y = i % 10 == 0 ? Math.round(x) : (random.nextDouble() - 0.5) * 180D;
+                writer.reset();
+                writer.writeLineString(geometryFactory.createLineString(new Coordinate[]{new Coordinate(x, y), new Coordinate(y, x)}));
+                final String xText = Double.toString(Math.round(x * scale) / scale);
+                final String yText = Double.toString(Math.round(y * scale) / scale);
+                assertEquals("{\"type\":\"LineString\",\"coordinates\":[[" + xText + "," + yText + "],[" + yText + "," + xText + "]]}",
+                        new String(writer.toByteArray(), "UTF-8"));
+            }
+        }
+    }
+
+    @Test
+    public void testNearZeroMatchesDoubleToString() throws IOException {
+        final GeometryFactory geometryFactory = new GeometryFactory();
+        final double[] values = {0.00015, -0.00015, 0.00099994, 0.00099996, -0.001, 0.00004, 0.0000001, -0.0000004};
+        for (int decimals = 0; decimals <= GeoJsonWriter.MAX_DECIMALS; decimals++) {
+            final GeoJsonWriter writer = new GeoJsonWriter(decimals);
+            final double scale = Math.pow(10, decimals);
+            for (final double value : values) {
+                writer.reset();
+                writer.writeLineString(geometryFactory.createLineString(new Coordinate[]{new Coordinate(value, 0D), new Coordinate(1D, value)}));
+                final String text = Double.toString(Math.round(value * scale) / scale);
+                assertEquals("decimals " + decimals, "{\"type\":\"LineString\",\"coordinates\":[[" + text + ",0.0],[1.0," + text + "]]}",
+                        new String(writer.toByteArray(), "UTF-8"));
+            }
+        }
+    }
+
+    @Test
+    public void testTimestampZ() throws IOException {
+        // TCX tracks keep the epoch milliseconds of each point in z.
+        final Coordinate point = new Coordinate(-92.2639, 34.7473, 1330924800000D);
+        final GeometryFactory geometryFactory = new GeometryFactory();
+        final GeoJsonWriter writer = new GeoJsonWriter();
+        writer.writeLineString(geometryFactory.createLineString(new Coordinate[]{point, point}));
+        assertEquals("{\"type\":\"LineString\",\"coordinates\":[[-92.2639,34.7473,1.3309248E12],[-92.2639,34.7473,1.3309248E12]]}",
+                new String(writer.toByteArray(), "UTF-8"));
+
+        writer.reset();
+        writer.setDecimals(GeoJsonWriter.MAX_DECIMALS);
+        writer.writeLineString(geometryFactory.createLineString(new Coordinate[]{point, point}));
+        final double scale = Math.pow(10, GeoJsonWriter.MAX_DECIMALS);
+        final String vertex = "[" + Math.round(point.x * scale) / scale + "," + Math.round(point.y * scale) / scale + ",1.3309248E12]";
+        assertEquals("{\"type\":\"LineString\",\"coordinates\":[" + vertex + "," + vertex + "]}",
+                new String(writer.toByteArray(), "UTF-8"));
+    }
+
+    @Test
+    public void testPrecisionSetting() throws IOException {
+        final GarminFitService garminFitService = new GarminFitService();
+        garminFitService.setCoordinatePrecision(6);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        garminFitService.writeLinestringGeoJSON(new Coordinate[]{new Coordinate(-92.26391234, 34.7), new Coordinate(-92.0000004, 0.0000005)}, out);
+        assertEquals("{\"type\":\"LineString\",\"coordinates\":[[-92.263912,34.7],[-92.0,1.0E-6]]}", out.toString("UTF-8"));
+    }
+}
@@ -0,0 +1,110 @@
+package com.exploringspatial.geojson;
+
+import com.exploringspatial.domain.FitActivity;
+import com.exploringspatial.service.GarminFitService;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static com.exploringspatial.TestFixtures.decodeSample;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Encodes tracks as Google encoded polylines.
+ */
+public class PolylineEncoderTest {
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+
+    @Test
+    public void testGoogleExample() {
+        final PolylineEncoder encoder = new PolylineEncoder();
+        final Geometry line = geometryFactory.createLineString(new Coordinate[]{
+                new Coordinate(-120.2, 38.5), new Coordinate(-120.95, 40.7), new Coordinate(-126.453, 43.252)});
+        assertEquals(27, encoder.encode(line));
+        assertEquals("_p~iF~ps|U_ulLnnqC_mqNvxq`@", encoder.toString());
+        final Coordinate[] decoded = PolylineEncoder.decode(encoder.toString(), 5);
+        assertEquals(3, decoded.length);
+        assertEquals(-126.453, decoded[2].x, 1e-9);
+        assertEquals(43.252, decoded[2].y, 1e-9);
+    }
+
+    @Test
+    public void testExtremes() {
+        // From the antimeridian to the other side and from pole to pole: the largest differences.
+        final Coordinate[] extremes = new Coordinate[]{
+                new Coordinate(-180, -90), new Coordinate(180, 90), new Coordinate(-180, 90), new Coordinate(180, -90)};
+        final PolylineEncoder encoder = new PolylineEncoder(PolylineEncoder.MAX_PRECISION);
+        encoder.encode(geometryFactory.createLineString(extremes));
+        final String encoded = encoder.toString();
+        assertArrayEquals(extremes, PolylineEncoder.decode(encoded, PolylineEncoder.MAX_PRECISION));
+        // Decode again the way int based decoders do.
+        int index = 0;
+        int value = 0;
+        for (int i = 0; i < extremes.length * 2; i++) {
+            int result = 0;
+            int shift = 0;
+            int chunk;
+            do {
+                chunk = encoded.charAt(index++) - 63;
+                result |= (chunk & 0x1F) << shift;
+                shift += 5;
+            } while (chunk >= 0x20);
+            final int delta = (result & 1) != 0 ? ~(result >> 1) : result >> 1;
+            if (i % 2 == 1) {
+                value += delta;
+                assertEquals(extremes[i / 2].x, value / 1e6, 0D);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPrecisionTooHigh() {
+        new PolylineEncoder(PolylineEncoder.MAX_PRECISION + 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPropertyPrecision() {
+        new GarminFitService().setPolylinePrecision(4);
+    }
+
+    @Test
+    public void testSampleRoundTrip() throws IOException {
+        final GarminFitService garminFitService = new GarminFitService();
+        final FitActivity fitActivity = decodeSample(garminFitService);
+        final Coordinate[] polyline = fitActivity.getPolyline().toArray(new Coordinate[fitActivity.getPolyline().size()]);
+        final Geometry simplified = garminFitService.simplifyLineString(polyline);
+        for (final int precision : new int[]{5, 6}) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            garminFitService.writeEncodedPolyline(polyline, precision, out);
+            final Coordinate[] decoded = PolylineEncoder.decode(out.toString("US-ASCII"), precision);
+            assertEquals(simplified.getNumPoints(), decoded.length);
+            for (int i = 0; i < decoded.length; i++) {
+                assertEquals(simplified.getCoordinates()[i].x, decoded[i].x, 0.5 / Math.pow(10, precision) + 1e-12);
+                assertEquals(simplified.getCoordinates()[i].y, decoded[i].y, 0.5 / Math.pow(10, precision) + 1e-12);
+            }
+        }
+        final ByteArrayOutputStream lineString = new ByteArrayOutputStream();
+        garminFitService.writeLinestringGeoJSON(polyline, lineString);
+        final String encoded = garminFitService.encodePolyline(simplified, 5);
+        assertTrue(encoded.length() * 4 < lineString.size());
+    }
+
+    @Test
+    public void testFeatureProperty() throws IOException {
+        final GeoJsonWriter writer = new GeoJsonWriter();
+        writer.setPolylinePrecision(5);
+        // A 15 unit drop in latitude encodes as a backslash, which JSON escapes.
+        writer.writeFeature(new FitActivity(), geometryFactory.createLineString(new Coordinate[]{
+                new Coordinate(0, 0), new Coordinate(0, -0.00015)}), "x");
+        assertEquals("{\"type\":\"Feature\",\"geometry\":{\"type\":\"LineString\",\"coordinates\":[[0.0,0.0],[0.0,-1.0E-4]]},"
+                        + "\"properties\":{\"minLat\":-1.5E-4,\"minLon\":0.0,\"maxLat\":0.0,\"maxLon\":0.0,\"polyline\":\"??\\\\?\"},\"id\":\"x\"}",
+                new String(writer.toByteArray(), "UTF-8"));
+        assertEquals(-0.00015, PolylineEncoder.decode("??\\?", 5)[1].y, 1e-12);
+    }
+}
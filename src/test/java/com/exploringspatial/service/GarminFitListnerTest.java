@@ -1,6 +1,10 @@
 package com.exploringspatial.service;
 
 import com.exploringspatial.domain.FitActivity;
+import com.exploringspatial.fit.FitDecodeEngine;
+import com.exploringspatial.fit.FitProjection;
+import com.exploringspatial.fit.GarminFitListener;
+import com.garmin.fit.MesgNum;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
 import org.junit.Test;
@@ -10,6 +14,7 @@ import java.io.*;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -27,6 +32,67 @@ public class GarminFitListnerTest {
         assertTrue(!fitActivity.getPolyline().isEmpty());
     }
 
+    @Test
+    public void testNativeDecoderMatchesSdk() {
+        final GarminFitService garminFitService = new GarminFitService();
+        garminFitService.setDecodeEngine(FitDecodeEngine.SDK);
+        garminFitService.setSemicircleTracks(false);
+        final FitActivity expected = garminFitService.decodeFitFile(this.getClass().getResourceAsStream(fileName));
+        garminFitService.setDecodeEngine(FitDecodeEngine.NATIVE);
+        garminFitService.setSemicircleTracks(true);
+        final FitActivity actual = garminFitService.decodeFitFile(this.getClass().getResourceAsStream(fileName));
+        assertTrue(actual.getTrack().isSemicircles());
+        assertNotNull(actual);
+        assertEquals(expected.getSport(), actual.getSport());
+        assertEquals(expected.getStartTime(), actual.getStartTime());
+        assertEquals(expected.getTotalMeters(), actual.getTotalMeters());
+        assertEquals(expected.getTotalSeconds(), actual.getTotalSeconds());
+        assertEquals(expected.getPolyline().size(), actual.getPolyline().size());
+        for (int i = 0; i < expected.getPolyline().size(); i++) {
+            assertTrue(expected.getPolyline().get(i).equals3D(actual.getPolyline().get(i)));
+        }
+    }
+
+    @Test
+    public void testTrickledStreamMatchesWholeStream() {
+        final GarminFitService garminFitService = new GarminFitService();
+        final FitActivity expected = garminFitService.decodeFitFile(this.getClass().getResourceAsStream(fileName));
+        // Reports nothing available and returns a few bytes per read, so the buffer has to grow.
+        final InputStream trickle = new FilterInputStream(this.getClass().getResourceAsStream(fileName)) {
+            @Override
+            public int available() {
+                return 0;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                return super.read(b, off, Math.min(len, 100));
+            }
+        };
+        final FitActivity actual = garminFitService.decodeFitFile(trickle);
+        assertEquals(expected.getTotalMeters(), actual.getTotalMeters());
+        assertEquals(expected.getPolyline().size(), actual.getPolyline().size());
+        for (int i = 0; i < expected.getPolyline().size(); i++) {
+            assertTrue(expected.getPolyline().get(i).equals3D(actual.getPolyline().get(i)));
+        }
+    }
+
+    @Test
+    public void testProjectionMatchesFullDecode() {
+        final GarminFitService garminFitService = new GarminFitService();
+        garminFitService.setProjection(null);
+        final FitActivity expected = garminFitService.decodeFitFile(this.getClass().getResourceAsStream(fileName));
+        garminFitService.setProjection(new FitProjection().include(MesgNum.RECORD, 0, 1));
+        final FitActivity recordsOnly = garminFitService.decodeFitFile(this.getClass().getResourceAsStream(fileName));
+        assertNull(recordsOnly.getSport());
+        assertEquals(expected.getPolyline().size(), recordsOnly.getPolyline().size());
+        garminFitService.setProjection(GarminFitListener.createProjection());
+        final FitActivity projected = garminFitService.decodeFitFile(this.getClass().getResourceAsStream(fileName));
+        assertEquals(expected.getSport(), projected.getSport());
+        assertEquals(expected.getTotalMeters(), projected.getTotalMeters());
+        assertEquals(expected.getPolyline(), projected.getPolyline());
+    }
+
     @Test
     public void testSimplifyLineString() {
         final InputStream in = this.getClass().getResourceAsStream(fileName);
@@ -36,6 +102,16 @@ public class GarminFitListnerTest {
         assertTrue(geometry.getCoordinates().length < fitActivity.getPolyline().size()/2.85D );
     }
 
+    @Test
+    public void testSimplifyTrackSequence() {
+        final InputStream in = this.getClass().getResourceAsStream(fileName);
+        final GarminFitService garminFitService = new GarminFitService();
+        final FitActivity fitActivity = garminFitService.decodeFitFile(in);
+        final Geometry expected = garminFitService.simplifyLineString(fitActivity.getPolyline().toArray(new Coordinate[fitActivity.getPolyline().size()]));
+        final Geometry actual = garminFitService.simplifyLineString(fitActivity.getTrack().toCoordinateSequence());
+        assertTrue(expected.equalsExact(actual));
+    }
+
     @Test
     public void testWriteLineStringJSON() throws IOException {
         final InputStream in = this.getClass().getResourceAsStream(fileName);
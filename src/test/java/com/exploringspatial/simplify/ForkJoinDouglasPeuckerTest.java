@@ -0,0 +1,47 @@
+package com.exploringspatial.simplify;
+
+import com.exploringspatial.domain.FitTrack;
+import com.exploringspatial.service.GarminFitService;
+import com.vividsolutions.jts.geom.Coordinate;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the fork/join simplifier against DouglasPeuckerSimplifier on a long track.
+ */
+public class ForkJoinDouglasPeuckerTest {
+
+    @Test
+    public void testMatchesDouglasPeucker() {
+        final FitTrack track = new FitTrack();
+        final Random random = new Random(11);
+        double lon = -105.2;
+        double lat = 40.0;
+        for (int i = 0; i < 100000; i++) {
+            lon += 0.00002 + random.nextGaussian() * 0.00001;
+            lat += Math.sin(i / 2000D) * 0.00002 + random.nextGaussian() * 0.00001;
+            track.add(lon, lat, 1420639200000L + i * 1000L);
+        }
+        final GarminFitService garminFitService = new GarminFitService();
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final ForkJoinDouglasPeucker simplifier = new ForkJoinDouglasPeucker(pool, 64);
+            for (final double tolerance : new double[]{0D, 1e-5, 1e-4, 1e-3}) {
+                garminFitService.setTolerance(tolerance);
+                garminFitService.setSimplifyEngine(SimplifyEngine.JTS);
+                final Coordinate[] expected = garminFitService.simplifyLineString(track.toCoordinateSequence()).getCoordinates();
+                assertTrue(expected.length > 2);
+                assertArrayEquals(expected, simplifier.simplify(track.toCoordinateSequence(), tolerance));
+                garminFitService.setSimplifyEngine(SimplifyEngine.FORK_JOIN);
+                assertArrayEquals(expected, garminFitService.simplifyLineString(track.toCoordinateSequence()).getCoordinates());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
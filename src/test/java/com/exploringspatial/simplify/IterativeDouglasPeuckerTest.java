@@ -0,0 +1,60 @@
+package com.exploringspatial.simplify;
+
+import com.exploringspatial.domain.FitActivity;
+import com.exploringspatial.domain.FitTrack;
+import com.exploringspatial.service.GarminFitService;
+import com.vividsolutions.jts.geom.Coordinate;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static com.exploringspatial.TestFixtures.decodeSample;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks the primitive array simplifier against DouglasPeuckerSimplifier.
+ */
+public class IterativeDouglasPeuckerTest {
+    private static final double[] TOLERANCES = {0D, 1e-6, 1e-5, 1e-4, 1e-2};
+
+    @Test
+    public void testMatchesDouglasPeucker() throws Exception {
+        final GarminFitService garminFitService = new GarminFitService();
+        final FitActivity fitActivity = decodeSample(garminFitService);
+        final FitTrack track = fitActivity.getTrack();
+        for (final double tolerance : TOLERANCES) {
+            garminFitService.setTolerance(tolerance);
+            garminFitService.setSimplifyEngine(SimplifyEngine.JTS);
+            final Coordinate[] expected = garminFitService.simplifyLineString(track.toCoordinateSequence()).getCoordinates();
+            garminFitService.setSimplifyEngine(SimplifyEngine.ITERATIVE);
+            assertArrayEquals(expected, garminFitService.simplifyLineString(track.toCoordinateSequence()).getCoordinates());
+            final Coordinate[] coordinates = track.toCoordinateSequence().toCoordinateArray();
+            assertArrayEquals(expected, garminFitService.simplifyLineString(coordinates).getCoordinates());
+        }
+    }
+
+    @Test
+    public void testReusesBuffers() {
+        final Random random = new Random(3);
+        final FitTrack longTrack = new FitTrack();
+        final FitTrack shortTrack = new FitTrack();
+        for (int i = 0; i < 20000; i++) {
+            longTrack.add(random.nextDouble(), random.nextDouble());
+            if (i < 300) {
+                shortTrack.add(random.nextDouble(), random.nextDouble());
+            }
+        }
+        final GarminFitService garminFitService = new GarminFitService();
+        garminFitService.setTolerance(0.1);
+        final IterativeDouglasPeucker simplifier = new IterativeDouglasPeucker();
+        final int longCount = simplifier.simplify(longTrack, 0.1);
+        assertEquals(garminFitService.simplifyLineString(longTrack.toCoordinateSequence()).getNumPoints(), longCount);
+        final int[] indices = simplifier.getIndices();
+        final int shortCount = simplifier.simplify(shortTrack, 0.1);
+        assertSame(indices, simplifier.getIndices());
+        assertEquals(garminFitService.simplifyLineString(shortTrack.toCoordinateSequence()).getNumPoints(), shortCount);
+        assertEquals(0, shortTrack.size() - 1 - indices[shortCount - 1]);
+    }
+}
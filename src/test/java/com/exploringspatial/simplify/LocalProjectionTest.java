@@ -0,0 +1,76 @@
+package com.exploringspatial.simplify;
+
+import com.exploringspatial.domain.FitTrack;
+import com.exploringspatial.service.GarminFitService;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Simplifies the same route laid out at the equator and in northern Norway.
+ */
+public class LocalProjectionTest {
+
+    @Test
+    public void testMeterToleranceIgnoresLatitude() {
+        final FitTrack equator = createRoute(0D, 10D);
+        final FitTrack norway = createRoute(69.6, 18.9);
+        final GarminFitService garminFitService = new GarminFitService();
+
+        // In degrees the northern route is stretched east to west and keeps far more points.
+        final int equatorDegrees = garminFitService.simplifyLineString(equator.toCoordinateSequence()).getNumPoints();
+        final int norwayDegrees = garminFitService.simplifyLineString(norway.toCoordinateSequence()).getNumPoints();
+        assertTrue(norwayDegrees > equatorDegrees * 1.2);
+
+        garminFitService.setToleranceUnit(ToleranceUnit.METERS);
+        garminFitService.setTolerance(1D);
+        for (final SimplifyEngine engine : SimplifyEngine.values()) {
+            garminFitService.setSimplifyEngine(engine);
+            final Geometry equatorMeters = garminFitService.simplifyLineString(equator.toCoordinateSequence());
+            final Geometry norwayMeters = garminFitService.simplifyLineString(norway.toCoordinateSequence());
+            assertEquals(equatorMeters.getNumPoints(), norwayMeters.getNumPoints(), equatorMeters.getNumPoints() / 50);
+            // The original vertices come back.
+            final Coordinate last = norwayMeters.getCoordinates()[norwayMeters.getNumPoints() - 1];
+            assertEquals(norway.getLongitude(norway.size() - 1), last.x, 0D);
+            assertEquals(norway.getLatitude(norway.size() - 1), last.y, 0D);
+        }
+    }
+
+    @Test
+    public void testProject() {
+        final FitTrack track = new FitTrack();
+        track.add(179.999, 60D);
+        track.add(-179.999, 60.001);
+        final double[] x = new double[2];
+        final double[] y = new double[2];
+        LocalProjection.project(track.toCoordinateSequence(), x, y);
+        assertEquals(0D, x[0], 0D);
+        // 0.002 degrees east across the antimeridian, at half the equator's scale.
+        assertEquals(0.002 * LocalProjection.METERS_PER_DEGREE * Math.cos(Math.toRadians(60.0005)), x[1], 1e-6);
+        assertEquals(0.001 * LocalProjection.METERS_PER_DEGREE, y[1] - y[0], 1e-6);
+    }
+
+    /**
+     * @return a 5 km wandering route, built in meters and laid out at the given origin.
+     */
+    private static FitTrack createRoute(final double latitude, final double longitude) {
+        final Random random = new Random(5);
+        final FitTrack track = new FitTrack();
+        final double scale = Math.cos(Math.toRadians(latitude)) * LocalProjection.METERS_PER_DEGREE;
+        double east = 0D;
+        double north = 0D;
+        double heading = 0D;
+        for (int i = 0; i < 2000; i++) {
+            heading += random.nextGaussian() * 0.2;
+            east += Math.cos(heading) * 2.5;
+            north += Math.sin(heading) * 2.5;
+            track.add(longitude + east / scale, latitude + north / LocalProjection.METERS_PER_DEGREE);
+        }
+        return track;
+    }
+}
@@ -0,0 +1,57 @@
+package com.exploringspatial.simplify;
+
+import com.exploringspatial.domain.FitActivity;
+import com.exploringspatial.domain.FitTrack;
+import com.exploringspatial.service.GarminFitService;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static com.exploringspatial.TestFixtures.decodeSample;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Simplifies the sample activity to vertex budgets.
+ */
+public class PriorityDouglasPeuckerTest {
+
+    @Test
+    public void testBudget() throws Exception {
+        final GarminFitService garminFitService = new GarminFitService();
+        final FitTrack track = decodeSample(garminFitService).getTrack();
+        final PriorityDouglasPeucker simplifier = new PriorityDouglasPeucker();
+        int[] previous = null;
+        for (final int budget : new int[]{2, 3, 50, 500}) {
+            final int[] indices = simplifier.simplify(track.toCoordinateSequence(), budget, 0D);
+            assertEquals(budget, indices.length);
+            assertEquals(0, indices[0]);
+            assertEquals(track.size() - 1, indices[budget - 1]);
+            // A bigger budget only adds vertices.
+            if (previous != null) {
+                for (final int index : previous) {
+                    assertTrue(Arrays.binarySearch(indices, index) >= 0);
+                }
+            }
+            previous = indices;
+        }
+    }
+
+    @Test
+    public void testUnreachableBudgetMatchesDouglasPeucker() throws Exception {
+        final GarminFitService garminFitService = new GarminFitService();
+        final FitTrack track = decodeSample(garminFitService).getTrack();
+        final Coordinate[] expected = garminFitService.simplifyLineString(track.toCoordinateSequence()).getCoordinates();
+        garminFitService.setVertexBudget(track.size());
+        assertArrayEquals(expected, garminFitService.simplifyLineString(track.toCoordinateSequence()).getCoordinates());
+
+        // The default tolerance keeps more than 500 vertices, so a budget of 500 is spent.
+        garminFitService.setVertexBudget(500);
+        final Geometry geometry = garminFitService.simplifyLineString(track.toCoordinateSequence().toCoordinateArray());
+        assertTrue(expected.length > 500);
+        assertEquals(500, geometry.getNumPoints());
+    }
+}
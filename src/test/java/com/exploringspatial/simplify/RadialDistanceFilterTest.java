@@ -0,0 +1,52 @@
+package com.exploringspatial.simplify;
+
+import com.exploringspatial.domain.FitActivity;
+import com.exploringspatial.domain.FitTrack;
+import com.exploringspatial.service.GarminFitService;
+import org.junit.Test;
+
+
+import static com.exploringspatial.TestFixtures.decodeSample;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the pre-filter applied while decoding the sample activity.
+ */
+public class RadialDistanceFilterTest {
+
+    @Test
+    public void testPrefilterWhileDecoding() throws Exception {
+        final GarminFitService garminFitService = new GarminFitService();
+        final FitTrack track = decodeSample(garminFitService).getTrack();
+        final double radius = 5e-5;
+        garminFitService.setPrefilterRadius(radius);
+        final FitTrack filtered = decodeSample(garminFitService).getTrack();
+        assertTrue(filtered.size() < track.size());
+        assertEquals(track.getLongitude(track.size() - 1), filtered.getLongitude(filtered.size() - 1), 0D);
+        assertEquals(track.getLatitude(track.size() - 1), filtered.getLatitude(filtered.size() - 1), 0D);
+        // Each dropped point is within the radius of the point kept before it.
+        int kept = 0;
+        for (int i = 0; i < track.size(); i++) {
+            if (kept + 1 < filtered.size() && track.getLongitude(i) == filtered.getLongitude(kept + 1)
+                    && track.getLatitude(i) == filtered.getLatitude(kept + 1)) {
+                kept++;
+            } else if (i < track.size() - 1) {
+                assertTrue(Math.hypot(track.getLongitude(i) - filtered.getLongitude(kept),
+                        track.getLatitude(i) - filtered.getLatitude(kept)) <= radius);
+            }
+        }
+        assertEquals(filtered.size() - 1, kept);
+    }
+
+    @Test
+    public void testRepeats() {
+        final RadialDistanceFilter filter = new RadialDistanceFilter(Double.MIN_VALUE);
+        assertTrue(filter.accept(1D, 2D));
+        assertFalse(filter.accept(1D, 2D));
+        assertTrue(filter.accept(1D, 2.0000001));
+        filter.reset();
+        assertTrue(filter.accept(1D, 2.0000001));
+    }
+}
@@ -0,0 +1,52 @@
+package com.exploringspatial.simplify;
+
+import com.exploringspatial.domain.FitActivity;
+import com.exploringspatial.domain.FitTrack;
+import com.exploringspatial.service.GarminFitService;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static com.exploringspatial.TestFixtures.decodeSample;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares simplifying during decode with simplifying the decoded track.
+ */
+public class StreamingDouglasPeuckerTest {
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+
+    @Test
+    public void testWholeTrackWindowMatchesDouglasPeucker() throws Exception {
+        final GarminFitService garminFitService = new GarminFitService();
+        final FitTrack track = decodeSample(garminFitService).getTrack();
+        garminFitService.setStreamingWindow(track.size());
+        final FitTrack streamed = decodeSample(garminFitService).getTrack();
+        final Geometry expected = garminFitService.simplifyLineString(track.toCoordinateSequence());
+        assertArrayEquals(expected.getCoordinates(), streamed.toCoordinateSequence().toCoordinateArray());
+    }
+
+    @Test
+    public void testSmallWindowStaysWithinTolerance() throws Exception {
+        final GarminFitService garminFitService = new GarminFitService();
+        final FitTrack track = decodeSample(garminFitService).getTrack();
+        for (final int window : new int[]{StreamingDouglasPeucker.DEFAULT_WINDOW, 100, 10}) {
+            garminFitService.setStreamingWindow(window);
+            final FitTrack streamed = decodeSample(garminFitService).getTrack();
+            assertEquals(track.getLongitude(0), streamed.getLongitude(0), 0D);
+            assertEquals(track.getLatitude(track.size() - 1), streamed.getLatitude(streamed.size() - 1), 0D);
+            assertTrue(streamed.size() < track.size());
+            final LineString line = geometryFactory.createLineString(streamed.toCoordinateSequence());
+            for (int i = 0; i < track.size(); i++) {
+                final Coordinate point = new Coordinate(track.getLongitude(i), track.getLatitude(i));
+                assertTrue(line.distance(geometryFactory.createPoint(point)) <= garminFitService.getTolerance());
+            }
+        }
+    }
+}
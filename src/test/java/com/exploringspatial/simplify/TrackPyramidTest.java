@@ -0,0 +1,81 @@
+package com.exploringspatial.simplify;
+
+import com.exploringspatial.domain.FitActivity;
+import com.exploringspatial.domain.FitTrack;
+import com.exploringspatial.service.GarminFitService;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static com.exploringspatial.TestFixtures.decodeSample;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the pyramid against DouglasPeuckerSimplifier at many tolerances.
+ */
+public class TrackPyramidTest {
+    private static final double[] TOLERANCES = {0D, 1e-7, 1e-6, 5e-6, 1e-5, 2e-5, 1e-4, 1e-3, 1e-2, 1D};
+
+    @Test
+    public void testMatchesDouglasPeucker() throws Exception {
+        final GarminFitService garminFitService = new GarminFitService();
+        final FitActivity fitActivity = decodeSample(garminFitService);
+        assertSamePoints(garminFitService, fitActivity.getTrack());
+    }
+
+    @Test
+    public void testMatchesDouglasPeuckerOnNoisyTrack() {
+        final Random random = new Random(7);
+        final FitTrack track = new FitTrack();
+        double lon = -94.7;
+        double lat = 38.9;
+        for (int i = 0; i < 5000; i++) {
+            // Repeated and collinear points as well as noise.
+            if (i % 50 != 0) {
+                lon += random.nextInt(3) * 0.00001;
+                lat += (random.nextInt(5) - 2) * 0.00001;
+            }
+            track.add(lon, lat, 1420639200000L + i * 1000L);
+        }
+        assertSamePoints(new GarminFitService(), track);
+    }
+
+    @Test
+    public void testStationaryTrack() {
+        final FitTrack track = new FitTrack();
+        for (int i = 0; i < 100000; i++) {
+            track.add(-94.7, 38.9, 1420639200000L + i * 1000L);
+        }
+        final TrackPyramid pyramid = new TrackPyramid(track);
+        assertEquals(Double.POSITIVE_INFINITY, pyramid.getSignificance(0), 0D);
+        assertEquals(0D, pyramid.getSignificance(50000), 0D);
+        assertEquals(Double.POSITIVE_INFINITY, pyramid.getSignificance(99999), 0D);
+        assertEquals(2, pyramid.getIndices(0D).length);
+    }
+
+    @Test
+    public void testToleranceForZoom() {
+        assertEquals(360D / 256D, TrackPyramid.toleranceForZoom(0), 0D);
+        assertEquals(360D / 256D / 65536D, TrackPyramid.toleranceForZoom(16), 0D);
+    }
+
+    private static void assertSamePoints(final GarminFitService garminFitService, final FitTrack track) {
+        final TrackPyramid pyramid = new TrackPyramid(track);
+        int previous = Integer.MAX_VALUE;
+        for (final double tolerance : TOLERANCES) {
+            garminFitService.setTolerance(tolerance);
+            final Coordinate[] expected = garminFitService.simplifyLineString(track.toCoordinateSequence()).getCoordinates();
+            final Geometry geometry = garminFitService.simplifyLineString(pyramid, tolerance);
+            final Coordinate[] actual = geometry.getCoordinates();
+            assertEquals("tolerance " + tolerance, expected.length, actual.length);
+            for (int i = 0; i < expected.length; i++) {
+                assertTrue(expected[i].equals3D(actual[i]) || (expected[i].equals2D(actual[i]) && Double.isNaN(expected[i].z)));
+            }
+            assertTrue(actual.length <= previous);
+            previous = actual.length;
+        }
+    }
+}
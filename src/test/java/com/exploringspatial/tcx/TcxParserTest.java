@@ -0,0 +1,60 @@
+package com.exploringspatial.tcx;
+
+import com.exploringspatial.domain.FitActivity;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Shares one TcxParser between threads.
+ */
+public class TcxParserTest {
+
+    @Test
+    public void testSharedBetweenThreads() throws Exception {
+        final TcxParser tcxParser = new TcxParser();
+        final List<FitActivity> expected = parse(tcxParser);
+        assertSame(TcxParser.getJaxbContext(), TcxParser.getJaxbContext());
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<List<FitActivity>>> futures = new ArrayList<Future<List<FitActivity>>>();
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(new Callable<List<FitActivity>>() {
+                    @Override
+                    public List<FitActivity> call() throws Exception {
+                        return parse(tcxParser);
+                    }
+                }));
+            }
+            for (final Future<List<FitActivity>> future : futures) {
+                final List<FitActivity> actual = future.get();
+                assertEquals(expected.size(), actual.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.get(i).getTotalMeters(), actual.get(i).getTotalMeters());
+                    assertEquals(expected.get(i).getTrack().size(), actual.get(i).getTrack().size());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private List<FitActivity> parse(final TcxParser tcxParser) throws Exception {
+        final InputStream in = this.getClass().getResourceAsStream("/sample.tcx");
+        try {
+            return tcxParser.parseTcxFile(in);
+        } finally {
+            in.close();
+        }
+    }
+}
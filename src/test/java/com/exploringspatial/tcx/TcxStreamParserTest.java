@@ -0,0 +1,111 @@
+package com.exploringspatial.tcx;
+
+import com.exploringspatial.domain.FitActivity;
+import com.exploringspatial.domain.FitTrack;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.StreamSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the StAX parser with the JAXB TcxParser.
+ */
+public class TcxStreamParserTest {
+    private static final String MULTI_SPORT =
+            "<TrainingCenterDatabase xmlns=\"" + TcxStreamParser.TCX_NAMESPACE + "\"><Activities>"
+            + "<MultiSportSession><Id>2015-01-07T14:00:00Z</Id>"
+            + "<FirstSport><Activity Sport=\"Biking\"><Id>2015-01-07T14:00:00Z</Id>"
+            + "<Lap StartTime=\"2015-01-07T14:00:00Z\"><TotalTimeSeconds>60</TotalTimeSeconds><DistanceMeters>500.5</DistanceMeters>"
+            + "<Calories>10</Calories><Intensity>Active</Intensity><TriggerMethod>Manual</TriggerMethod><Track>"
+            + "<Trackpoint><Time>2015-01-07T14:00:01Z</Time><Position><LatitudeDegrees>38.95</LatitudeDegrees>"
+            + "<LongitudeDegrees>-94.72</LongitudeDegrees></Position></Trackpoint></Track></Lap></Activity></FirstSport>"
+            + "<NextSport><Transition StartTime=\"2015-01-07T14:01:00Z\"><TotalTimeSeconds>30</TotalTimeSeconds>"
+            + "<DistanceMeters>20</DistanceMeters><Calories>1</Calories><Intensity>Active</Intensity><TriggerMethod>Manual</TriggerMethod></Transition>"
+            + "<Activity Sport=\"Running\"><Id>2015-01-07T14:02:00Z</Id>"
+            + "<Lap StartTime=\"2015-01-07T14:02:00Z\"><TotalTimeSeconds>90</TotalTimeSeconds><DistanceMeters>300</DistanceMeters>"
+            + "<Calories>10</Calories><Intensity>Active</Intensity><TriggerMethod>Manual</TriggerMethod><Track>"
+            + "<Trackpoint><Time>2015-01-07T14:02:01.5Z</Time><Position><LatitudeDegrees>38.96</LatitudeDegrees>"
+            + "<LongitudeDegrees>-94.73</LongitudeDegrees></Position></Trackpoint></Track></Lap></Activity></NextSport>"
+            + "</MultiSportSession></Activities></TrainingCenterDatabase>";
+
+    @Test
+    public void testMatchesJaxbParser() throws IOException {
+        final List<FitActivity> expected = parse(new TcxParser(), "/sample.tcx");
+        final List<FitActivity> actual = parse(new TcxStreamParser(), "/sample.tcx");
+        assertEquals(3, expected.size());
+        assertSameActivities(expected, actual);
+    }
+
+    @Test
+    public void testMultiSportSession() {
+        final byte[] bytes = MULTI_SPORT.getBytes(StandardCharsets.UTF_8);
+        final List<FitActivity> expected = new TcxParser().parseTcxFile(new ByteArrayInputStream(bytes));
+        final List<FitActivity> actual = new TcxStreamParser().parseTcxFile(new ByteArrayInputStream(bytes));
+        assertEquals(2, expected.size());
+        assertSameActivities(expected, actual);
+    }
+
+    @Test
+    public void testIteratorMatchesList() throws Exception {
+        final List<FitActivity> expected = parse(new TcxParser(), "/sample.tcx");
+        final List<FitActivity> actual = new ArrayList<FitActivity>();
+        final InputStream in = this.getClass().getResourceAsStream("/sample.tcx");
+        try {
+            final TcxActivityIterator iterator = new TcxStreamParser().iterateTcxFile(in);
+            while (iterator.hasNext()) {
+                actual.add(iterator.next());
+            }
+            assertFalse(iterator.hasNext());
+        } finally {
+            in.close();
+        }
+        assertSameActivities(expected, actual);
+
+        final byte[] bytes = MULTI_SPORT.getBytes(StandardCharsets.UTF_8);
+        assertEquals(2, StreamSupport.stream(new TcxStreamParser().spliterator(new ByteArrayInputStream(bytes)), false).count());
+    }
+
+    @Test
+    public void testMalformedFile() {
+        final byte[] bytes = "<TrainingCenterDatabase><Activities>".getBytes(StandardCharsets.UTF_8);
+        assertTrue(new TcxStreamParser().parseTcxFile(new ByteArrayInputStream(bytes)).isEmpty());
+    }
+
+    private List<FitActivity> parse(final Object parser, final String resource) throws IOException {
+        final InputStream in = this.getClass().getResourceAsStream(resource);
+        try {
+            if (parser instanceof TcxParser) {
+                return ((TcxParser) parser).parseTcxFile(in);
+            }
+            return ((TcxStreamParser) parser).parseTcxFile(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void assertSameActivities(final List<FitActivity> expected, final List<FitActivity> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getSport(), actual.get(i).getSport());
+            assertEquals(expected.get(i).getTotalMeters(), actual.get(i).getTotalMeters());
+            assertEquals(expected.get(i).getTotalSeconds(), actual.get(i).getTotalSeconds());
+            final FitTrack expectedTrack = expected.get(i).getTrack();
+            final FitTrack actualTrack = actual.get(i).getTrack();
+            assertEquals(expectedTrack.size(), actualTrack.size());
+            for (int j = 0; j < expectedTrack.size(); j++) {
+                assertEquals(expectedTrack.getLongitude(j), actualTrack.getLongitude(j), 0D);
+                assertEquals(expectedTrack.getLatitude(j), actualTrack.getLatitude(j), 0D);
+                assertEquals(expectedTrack.getTime(j), actualTrack.getTime(j));
+            }
+        }
+    }
+}
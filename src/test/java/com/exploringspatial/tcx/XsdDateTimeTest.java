@@ -0,0 +1,56 @@
+package com.exploringspatial.tcx;
+
+import org.junit.Test;
+
+import javax.xml.datatype.DatatypeFactory;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares XsdDateTime with the XMLGregorianCalendar chain it replaces.
+ */
+public class XsdDateTimeTest {
+    private static final String[] VALUES = {
+            "2015-01-07T14:03:27Z",
+            "2015-01-07T14:03:27.000Z",
+            "2015-01-07T14:03:27.5Z",
+            "2015-01-07T14:03:27.999999Z",
+            "2015-01-07T08:03:27-06:00",
+            "2015-01-07T20:33:27.25+05:30",
+            "2016-02-29T23:59:59+14:00",
+            "1970-01-01T00:00:00Z",
+            "1969-12-31T23:59:59.999Z",
+            "2000-03-01T00:00:00-12:00",
+            " 2015-01-07T14:03:27Z\n",
+            "2015-01-07T14:03:27",
+            "2015-01-07T14:03:27.123",
+            "2015-01-07T24:00:00Z",
+            "1066-10-14T09:00:00Z"
+    };
+
+    @Test
+    public void testMatchesXmlGregorianCalendar() throws Exception {
+        final DatatypeFactory datatypeFactory = DatatypeFactory.newInstance();
+        for (final String value : VALUES) {
+            final long expected = datatypeFactory.newXMLGregorianCalendar(value.trim()).toGregorianCalendar().getTime().getTime();
+            assertEquals(value, expected, XsdDateTime.parseMillis(value));
+            assertEquals(value, expected, XsdDateTime.toMillis(datatypeFactory.newXMLGregorianCalendar(value.trim())));
+        }
+        final Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            final int offset = random.nextInt(57) * 15 - 420;
+            final String value = String.format("%04d-%02d-%02dT%02d:%02d:%02d.%03d%s",
+                    1900 + random.nextInt(200), 1 + random.nextInt(12), 1 + random.nextInt(28),
+                    random.nextInt(24), random.nextInt(60), random.nextInt(60), random.nextInt(1000),
+                    offset == 0 ? "Z" : String.format("%s%02d:%02d", offset < 0 ? "-" : "+", Math.abs(offset) / 60, Math.abs(offset) % 60));
+            final long expected = datatypeFactory.newXMLGregorianCalendar(value).toGregorianCalendar().getTime().getTime();
+            assertEquals(value, expected, XsdDateTime.parseMillis(value));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsInvalidValue() {
+        XsdDateTime.parseMillis("2015-13-07T14:03:27Z");
+    }
+}